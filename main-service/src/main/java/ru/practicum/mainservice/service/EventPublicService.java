@@ -18,9 +18,11 @@ import ru.practicum.mainservice.exception.NoFoundObjectException;
 import ru.practicum.mainservice.repository.EventRepository;
 import ru.practicum.mainservice.service.mapper.EventMapper;
 import ru.practicum.mainservice.utils.DateTimeUtils;
+import ru.practicum.mainservice.utils.LongLongMap;
 import ru.practicum.statsdto.HitDto;
-import ru.practicum.statsdto.ViewStatsDto;
+import ru.practicum.statsdto.ViewEntityStatsDto;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.Comparator;
 import java.util.List;
@@ -31,6 +33,9 @@ import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
 public class EventPublicService {
+    private static final String APP_NAME = "ewm-main-service";
+    private static final String EVENTS_ENTITY_TYPE = "events";
+
     private final EventRepository eventRepository;
     private final EstimationService estimationService;
     private final StatClient statClient;
@@ -156,43 +161,39 @@ public class EventPublicService {
 
     private void saveInfoToStatistics(String ip, String uri) {
         statClient.saveInfo(HitDto.builder()
-                .app("ewm-main-service")
+                .app(APP_NAME)
                 .uri(uri)
                 .ip(ip)
-                .timestamp(LocalDateTime.now().format(DateTimeUtils.DATE_TIME_FORMATTER))
+                .epochMillis(Instant.now().toEpochMilli())
                 .build());
     }
 
     private void updateViewsOfEvents(List<Event> events) {
-        List<String> uris = events.stream()
-                .map(event -> String.format("/events/%s", event.getId()))
-                .collect(Collectors.toList());
-
-        List<ViewStatsDto> statistics = getViewsStatistics(uris);
-
-        events.forEach(event -> {
-            ViewStatsDto foundViewInStats = statistics.stream()
-                    .filter(statDto -> {
-                        Long eventIdFromStats = Long.parseLong(statDto.getUri().substring("/events/".length()));
-                        return Objects.equals(eventIdFromStats, event.getId());
-                    })
-                    .findFirst()
-                    .orElse(null);
+        if (events.isEmpty()) {
+            return;
+        }
+        LongLongMap views = getViewsStatistics(events.stream()
+                .mapToLong(Event::getId)
+                .toArray());
 
-            long currentCountViews = foundViewInStats == null
-                    ? 0
-                    : foundViewInStats.getHits();
-            event.setViews((int) currentCountViews + 1);
-        });
+        events.forEach(event -> event.setViews((int) views.getOrDefault(event.getId(), 0) + 1));
 
         eventRepository.saveAll(events);
     }
 
-    private List<ViewStatsDto> getViewsStatistics(List<String> uris) {
-        return statClient.getStatistics(
+    private LongLongMap getViewsStatistics(long[] eventIds) {
+        ViewEntityStatsDto statistics = statClient.getEntityStatistics(
+                APP_NAME,
+                EVENTS_ENTITY_TYPE,
+                eventIds,
                 LocalDateTime.now().minusYears(100).format(DateTimeUtils.DATE_TIME_FORMATTER),
                 LocalDateTime.now().plusYears(5).format(DateTimeUtils.DATE_TIME_FORMATTER),
-                uris,
                 true);
+
+        LongLongMap views = new LongLongMap(statistics.getIds().length);
+        for (int i = 0; i < statistics.getIds().length; i++) {
+            views.put(statistics.getIds()[i], statistics.getHits()[i]);
+        }
+        return views;
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package ru.practicum.mainservice.utils;
+
+/**
+ * Map from long to long over two plain arrays with linear probing, so neither keys nor values are boxed.
+ * It is sized once for the number of keys it will hold and never grows.
+ */
+public class LongLongMap {
+    private final long[] keys;
+    private final long[] values;
+    private final boolean[] used;
+    private final int mask;
+    private int size;
+
+    public LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void put(long key, long value) {
+        int slot = slot(key);
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (!used[slot]) {
+            if (size == mask) {
+                throw new IllegalStateException("LongLongMap is full: " + size + " keys");
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.statsbenchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.statsdto.ViewStatsDto;
+import ru.practicum.statsserver.service.StatsService;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * GET /stats latency over a month of synthetic hits. The result cache is off, so every
+ * invocation reaches the database. Use -p rows=1000000 for a quick run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int URIS = 1000;
+    private static final int IPS = 100_000;
+    private static final int DAYS = 30;
+    private static final LocalDateTime END = SyntheticDataset.START.plusDays(DAYS).minusSeconds(1);
+
+    @Param({"1000000", "10000000", "100000000"})
+    private long rows;
+
+    @Param({"false", "true"})
+    private boolean unique;
+
+    private ConfigurableApplicationContext context;
+    private StatsService service;
+    private List<String> tenUris;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("stats.cache.enabled=false", "stats.partition.enabled=false");
+        SyntheticDataset.load(context.getBean(DataSource.class), rows, URIS, IPS, DAYS);
+        service = context.getBean(StatsService.class);
+
+        Random random = new Random(42);
+        tenUris = IntStream.generate(() -> 1 + random.nextInt(URIS))
+                .distinct()
+                .limit(10)
+                .mapToObj(id -> "/events/" + id)
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> allUris() {
+        return service.getAllStats(SyntheticDataset.START, END, null, unique, false);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> tenUris() {
+        return service.getAllStats(SyntheticDataset.START, END, tenUris, unique, false);
+    }
+}
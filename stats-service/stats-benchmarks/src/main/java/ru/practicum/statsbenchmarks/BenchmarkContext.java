@@ -0,0 +1,36 @@
+package ru.practicum.statsbenchmarks;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.statsserver.StatServerApplication;
+
+/**
+ * Starts the stats server without its web layer against the benchmark database.
+ * The schema is recreated on every start, so point stats.bench.url at a throwaway database.
+ */
+@UtilityClass
+public class BenchmarkContext {
+    private static final String URL = System.getProperty("stats.bench.url",
+            "jdbc:postgresql://localhost:5432/stats_bench?reWriteBatchedInserts=true");
+    private static final String USER = System.getProperty("stats.bench.user", "postgres");
+    private static final String PASSWORD = System.getProperty("stats.bench.password", "rootroot");
+
+    public ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(StatServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "spring.datasource.url=" + URL,
+                        "spring.datasource.username=" + USER,
+                        "spring.datasource.password=" + PASSWORD,
+                        "spring.sql.init.mode=always",
+                        "spring.jpa.properties.hibernate.show_sql=false",
+                        "logging.level.root=warn",
+                        "logging.level.ru.practicum=warn")
+                .properties(properties)
+                .run();
+    }
+}
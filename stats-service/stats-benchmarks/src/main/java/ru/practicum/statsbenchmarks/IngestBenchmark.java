@@ -0,0 +1,77 @@
+package ru.practicum.statsbenchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.statsdto.HitBatchResultDto;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsserver.service.StatsService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hits per second through the synchronous write path, one request per hit versus one per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestBenchmark {
+    private static final int BATCH_SIZE = 500;
+    private static final int HITS = 100_000;
+
+    private ConfigurableApplicationContext context;
+    private StatsService service;
+    private List<HitDto> hits;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        service = context.getBean(StatsService.class);
+
+        Random random = new Random(42);
+        hits = new ArrayList<>(HITS);
+        for (int i = 0; i < HITS; i++) {
+            hits.add(new HitDto(SyntheticDataset.APP,
+                    "/events/" + random.nextInt(1000),
+                    "10.0." + random.nextInt(256) + "." + random.nextInt(256),
+                    String.format("2024-01-%02d %02d:%02d:%02d", 1 + random.nextInt(28),
+                            random.nextInt(24), random.nextInt(60), random.nextInt(60)), null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void singleInsert() {
+        service.saveRecord(hits.get(next), null);
+        next = (next + 1) % HITS;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public HitBatchResultDto batchedInsert() {
+        List<HitDto> batch = hits.subList(next, next + BATCH_SIZE);
+        next = (next + BATCH_SIZE) % HITS;
+        return service.saveRecords(batch, null);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.statsbenchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.service.StatsMapper;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an incoming hit into an entity, and of the timestamp parsing inside it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MappingBenchmark {
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(PATTERN);
+
+    private HitDto ipv4Hit;
+    private HitDto ipv6Hit;
+    private HitDto epochMillisHit;
+    private String timestamp;
+
+    @Setup
+    public void setUp() {
+        timestamp = "2024-01-15 13:45:07";
+        ipv4Hit = new HitDto("ewm-main-service", "/events/42", "192.168.17.201", timestamp, null);
+        ipv6Hit = new HitDto("ewm-main-service", "/events/42", "2001:db8:85a3::8a2e:370:7334", timestamp, null);
+        epochMillisHit = new HitDto("ewm-main-service", "/events/42", "192.168.17.201", null,
+                LocalDateTime.parse(timestamp, FORMATTER).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    @Benchmark
+    public ItemStats mapIpv4Hit() {
+        return StatsMapper.toObject(ipv4Hit);
+    }
+
+    @Benchmark
+    public ItemStats mapIpv6Hit() {
+        return StatsMapper.toObject(ipv6Hit);
+    }
+
+    @Benchmark
+    public ItemStats mapEpochMillisHit() {
+        return StatsMapper.toObject(epochMillisHit);
+    }
+
+    @Benchmark
+    public LocalDateTime parseTimestampWithNewFormatter() {
+        return LocalDateTime.from(DateTimeFormatter.ofPattern(PATTERN).parse(timestamp));
+    }
+
+    @Benchmark
+    public LocalDateTime parseTimestampWithSharedFormatter() {
+        return LocalDateTime.parse(timestamp, FORMATTER);
+    }
+}
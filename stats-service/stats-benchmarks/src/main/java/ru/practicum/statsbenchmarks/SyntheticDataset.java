@@ -0,0 +1,56 @@
+package ru.practicum.statsbenchmarks;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.practicum.statsserver.model.RollupGranularity;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Generates hits inside Postgres, so even 100M rows load in minutes. A fixed random seed
+ * makes every load of the same size produce the same rows.
+ */
+@UtilityClass
+public class SyntheticDataset {
+    public static final String APP = "ewm-main-service";
+    public static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final DateTimeFormatter SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    public void load(DataSource dataSource, long rows, int uris, int ips, int days) {
+        try (Connection connection = dataSource.getConnection()) {
+            // setseed only affects random() calls made on the same connection
+            JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+
+            for (int day = 0; day < days; day++) {
+                LocalDate from = START.toLocalDate().plusDays(day);
+                jdbc.execute(String.format("create table if not exists stats_p%s partition of stats " +
+                        "for values from ('%s') to ('%s')", from.format(SUFFIX_FORMATTER), from, from.plusDays(1)));
+            }
+
+            jdbc.update("insert into stats_apps (value) values (?)", APP);
+            jdbc.update("insert into stats_uris (value) select '/events/' || g from generate_series(1, ?) g", uris);
+            jdbc.execute("select setseed(0.42)");
+            jdbc.update("insert into stats (app_id, uri_id, ip, request_date_time) " +
+                            "select 1, 1 + floor(random() * ?)::int, int4send(floor(random() * ?)::int), " +
+                            "?::timestamp + random() * (? * interval '1 day') " +
+                            "from generate_series(1, ?)",
+                    uris, ips, START, days, rows);
+
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                jdbc.execute(String.format("insert into %s (app_id, uri_id, bucket, hits) " +
+                                "select app_id, uri_id, date_trunc('%s', request_date_time), count(*) " +
+                                "from stats group by 1, 2, 3",
+                        granularity.getTable(), granularity.getTruncField()));
+            }
+            jdbc.execute("analyze");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to load synthetic dataset", e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.practicum.statsbenchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.statsserver.model.IpCount;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.service.TrendingService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest overhead per hit of the trending sketches, and the cost of reading the top uris and ips.
+ * Uris and ips are drawn from a skewed distribution so that a few of them dominate like in real traffic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class TrendingBenchmark {
+    private static final int BATCH_SIZE = 500;
+    private static final int BATCHES = 64;
+
+    @Param({"1000", "100000"})
+    private int uris;
+
+    private TrendingService trendingService;
+    private List<List<ItemStats>> batches;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        trendingService = new TrendingService(new SimpleMeterRegistry(), true, new int[]{1, 5, 60}, 200, 2048, 4, 4);
+        Random random = new Random(42);
+        batches = new ArrayList<>(BATCHES);
+        for (int b = 0; b < BATCHES; b++) {
+            List<ItemStats> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                int ip = skewed(random, uris * 10);
+                batch.add(ItemStats.builder()
+                        .appId(1)
+                        .uriId(skewed(random, uris))
+                        .ip(new byte[]{10, (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip})
+                        .requestDateTime(LocalDateTime.now())
+                        .build());
+            }
+            batches.add(batch);
+            trendingService.record(batch);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void recordBatch() {
+        trendingService.record(batches.get(next++ & (BATCHES - 1)));
+    }
+
+    @Benchmark
+    public List<StatsCount> topUris() {
+        return trendingService.getTopUris(60, 10);
+    }
+
+    @Benchmark
+    public List<IpCount> topIps() {
+        return trendingService.getTopIps(60, 10);
+    }
+
+    private static int skewed(Random random, int bound) {
+        return (int) (bound * Math.pow(random.nextDouble(), 3));
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.statsbenchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.service.StatsMapper;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side cost per hit of decoding a /hits batch into entities:
+ * JSON with formatted timestamps against CBOR with epoch millis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class WireFormatBenchmark {
+    private static final int BATCH_SIZE = 500;
+    private static final TypeReference<List<HitDto>> HIT_LIST = new TypeReference<>() {
+    };
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+
+    private byte[] jsonBatch;
+    private byte[] cborBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<HitDto> jsonHits = new ArrayList<>(BATCH_SIZE);
+        List<HitDto> cborHits = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            LocalDateTime time = LocalDateTime.of(2024, 1, 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            String uri = "/events/" + random.nextInt(1000);
+            String ip = "10.0." + random.nextInt(256) + "." + random.nextInt(256);
+            jsonHits.add(new HitDto(SyntheticDataset.APP, uri, ip,
+                    String.format("%1$tF %1$tT", time), null));
+            cborHits.add(new HitDto(SyntheticDataset.APP, uri, ip,
+                    null, time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        }
+        jsonBatch = jsonMapper.writeValueAsBytes(jsonHits);
+        cborBatch = cborMapper.writeValueAsBytes(cborHits);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<ItemStats> decodeJsonBatch() throws IOException {
+        return toEntities(jsonMapper.readValue(jsonBatch, HIT_LIST));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<ItemStats> decodeCborBatch() throws IOException {
+        return toEntities(cborMapper.readValue(cborBatch, HIT_LIST));
+    }
+
+    private static List<ItemStats> toEntities(List<HitDto> hits) {
+        return hits.stream()
+                .map(StatsMapper::toObject)
+                .collect(Collectors.toList());
+    }
+}
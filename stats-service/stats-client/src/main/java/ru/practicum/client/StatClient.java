@@ -2,10 +2,19 @@ package ru.practicum.client;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import ru.practicum.statsdto.EntityStatsQueryDto;
+import ru.practicum.statsdto.HitBatchResultDto;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.StatsQueryDto;
+import ru.practicum.statsdto.StatsWindowDto;
+import ru.practicum.statsdto.ViewEntityStatsDto;
 import ru.practicum.statsdto.ViewStatsDto;
+import ru.practicum.statsdto.ViewStatsWindowDto;
 
 import java.util.List;
 import java.util.Map;
@@ -14,16 +23,38 @@ import java.util.Objects;
 @Service
 @RequiredArgsConstructor
 public class StatClient {
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
     private final RestTemplate rest;
 
     @Value("${stats-server.url}")
     private String serverUrl;
 
+    /**
+     * Hits are posted as CBOR unless set to json; the server accepts both.
+     */
+    @Value("${stats-server.hit-format:cbor}")
+    private String hitFormat;
+
+    /**
+     * Uri lists longer than this are sent in the body of a bulk query instead of the query string.
+     */
+    @Value("${stats-server.query-body-threshold:50}")
+    private int queryBodyThreshold;
+
     public void saveInfo(HitDto hitDto) {
-        rest.postForLocation(serverUrl.concat("/hit"), hitDto);
+        rest.postForLocation(serverUrl.concat("/hit"), withContentType(hitDto));
+    }
+
+    public HitBatchResultDto saveInfo(List<HitDto> hitDtos) {
+        return rest.postForObject(serverUrl.concat("/hits"), withContentType(hitDtos), HitBatchResultDto.class);
     }
 
     public List<ViewStatsDto> getStatistics(String start, String end, List<String> uris, Boolean unique) {
+        if (Objects.nonNull(uris) && uris.size() > queryBodyThreshold) {
+            return queryStatistics(uris, unique, List.of(new StatsWindowDto(start, end))).get(0).getStats();
+        }
+
         Map<String, Object> parameters = Map.of(
                 "start", start,
                 "end", end,
@@ -37,4 +68,54 @@ public class StatClient {
 
         return Objects.isNull(statistics) ? List.of() : List.of(statistics);
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the uris over every window in one request, however many uris there are.
+     */
+    public List<ViewStatsWindowDto> queryStatistics(List<String> uris, Boolean unique, List<StatsWindowDto> windows) {
+        StatsQueryDto query = StatsQueryDto.builder()
+                .uris(uris)
+                .unique(unique)
+                .windows(windows)
+                .build();
+        ViewStatsWindowDto[] statistics = rest.postForObject(serverUrl.concat("/stats/query"),
+                asJson(query), ViewStatsWindowDto[].class);
+
+        return Objects.isNull(statistics) ? List.of() : List.of(statistics);
+    }
+
+    /**
+     * Counts the entities hit at /{entityType}/{id}, returned as ids and hits sorted by id.
+     */
+    public ViewEntityStatsDto getEntityStatistics(String app, String entityType, long[] ids,
+                                                  String start, String end, Boolean unique) {
+        EntityStatsQueryDto query = EntityStatsQueryDto.builder()
+                .app(app)
+                .entityType(entityType)
+                .ids(ids)
+                .start(start)
+                .end(end)
+                .unique(unique)
+                .build();
+
+        ViewEntityStatsDto statistics = rest.postForObject(serverUrl.concat("/stats/entities"),
+                asJson(query), ViewEntityStatsDto.class);
+
+        return Objects.isNull(statistics) ? new ViewEntityStatsDto(app, entityType, new long[0], new long[0])
+                : statistics;
+    }
+
+    private <T> HttpEntity<T> asJson(T body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        return new HttpEntity<>(body, headers);
+    }
+
+    private <T> HttpEntity<T> withContentType(T body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType("json".equalsIgnoreCase(hitFormat) ? MediaType.APPLICATION_JSON : CBOR);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        return new HttpEntity<>(body, headers);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+/**
+ * Counts of the entities with the given ids, each of them hit at the uri /{entityType}/{id} of the app.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityStatsQueryDto {
+    private String app;
+    private String entityType;
+    private long[] ids;
+    private String start;
+    private String end;
+    private Boolean unique;
+}
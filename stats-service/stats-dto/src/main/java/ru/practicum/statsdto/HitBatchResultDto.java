@@ -0,0 +1,17 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HitBatchResultDto {
+    private Integer accepted;
+    private List<Integer> batches;
+    private Integer duplicates;
+}
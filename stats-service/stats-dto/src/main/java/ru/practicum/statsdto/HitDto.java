@@ -1,5 +1,6 @@
 package ru.practicum.statsdto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
 @Getter
@@ -8,10 +9,17 @@ import lombok.*;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class HitDto {
     private String app;
     private String uri;
     private String ip;
     private String timestamp;
+    /**
+     * Request time as milliseconds since the epoch, e.g. Instant.now().toEpochMilli(). The server stores it
+     * in its own time zone, the zone the formatted timestamp is read in. Preferred over the formatted
+     * timestamp when both are set, since it needs no parsing.
+     */
+    private Long epochMillis;
 
 }
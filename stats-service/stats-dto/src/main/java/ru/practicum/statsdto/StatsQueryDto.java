@@ -0,0 +1,21 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Body of a bulk stats query: the same uris counted over every window.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsQueryDto {
+    private List<String> uris;
+    private Boolean unique;
+    private Boolean approximate;
+    private List<StatsWindowDto> windows;
+}
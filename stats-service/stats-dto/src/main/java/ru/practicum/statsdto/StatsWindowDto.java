@@ -0,0 +1,14 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsWindowDto {
+    private String start;
+    private String end;
+}
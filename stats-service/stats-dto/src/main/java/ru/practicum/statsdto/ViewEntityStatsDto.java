@@ -0,0 +1,19 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+/**
+ * Hits of entities as parallel arrays sorted by id. Entities without hits are left out.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewEntityStatsDto {
+    private String app;
+    private String entityType;
+    private long[] ids;
+    private long[] hits;
+}
@@ -0,0 +1,15 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewStatsPointDto {
+    private String start;
+    private Long hits;
+    private Long uniqueHits;
+}
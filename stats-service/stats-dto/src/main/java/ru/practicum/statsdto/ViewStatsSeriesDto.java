@@ -0,0 +1,17 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewStatsSeriesDto {
+    private String app;
+    private String uri;
+    private List<ViewStatsPointDto> points;
+}
@@ -0,0 +1,17 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewStatsWindowDto {
+    private String start;
+    private String end;
+    private List<ViewStatsDto> stats;
+}
@@ -0,0 +1,14 @@
+package ru.practicum.statsloadgen;
+
+import ru.practicum.statsdto.HitDto;
+
+import java.util.SplittableRandom;
+
+/**
+ * Supplies the hits to send and the uris to read back. Only used from the arrival thread.
+ */
+public interface HitSource {
+    HitDto next();
+
+    String randomUri(SplittableRandom random);
+}
@@ -0,0 +1,195 @@
+package ru.practicum.statsloadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import ru.practicum.statsdto.HitDto;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator: requests are sent on a precomputed arrival schedule no matter
+ * how fast the server answers, so a slow server builds up a queue instead of slowing the load down.
+ */
+public class LoadGenerator {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final LoadOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper hitMapper;
+    private final String hitContentType;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final SplittableRandom random;
+    private final HitSource hits;
+    private final OperationStats writes = new OperationStats("write");
+    private final OperationStats reads = new OperationStats("read");
+    private final Semaphore inFlight;
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.random = new SplittableRandom(options.getSeed());
+        this.hitMapper = options.isCbor() ? new CBORMapper() : objectMapper;
+        this.hitContentType = options.isCbor() ? "application/cbor" : "application/json";
+        this.hits = Objects.isNull(options.getReplay())
+                ? new SyntheticHitSource(options.getSeed(), options.getUris(), options.getIps(), options.isCbor())
+                : new RecordedHitSource(options.getReplay(), objectMapper);
+        this.inFlight = new Semaphore(options.getMaxInFlight());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        System.out.println("Load generator: " + options);
+        new LoadGenerator(options).run();
+    }
+
+    public void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+        long nextProgress = start + PROGRESS_INTERVAL_NANOS;
+        long scheduled = start;
+
+        while (true) {
+            scheduled += nextGapNanos();
+            if (scheduled >= end) {
+                break;
+            }
+            parkUntil(scheduled);
+            if (scheduled >= nextProgress) {
+                System.out.printf("%4ds in flight=%d%n", TimeUnit.NANOSECONDS.toSeconds(scheduled - start),
+                        options.getMaxInFlight() - inFlight.availablePermits());
+                nextProgress += PROGRESS_INTERVAL_NANOS;
+            }
+
+            boolean read = random.nextDouble() < options.getReadRatio();
+            send(read ? readRequest() : writeRequest(), read ? reads : writes, scheduled, scheduled >= measureFrom);
+        }
+
+        if (!inFlight.tryAcquire(options.getMaxInFlight(), 30, TimeUnit.SECONDS)) {
+            System.out.println("Some requests were still in flight after 30s and are not reported");
+        }
+        report(TimeUnit.NANOSECONDS.toMillis(end - measureFrom) / 1000.0);
+    }
+
+    private void send(HttpRequest request, OperationStats stats, long scheduled, boolean measured) {
+        if (!inFlight.tryAcquire()) {
+            if (measured) {
+                stats.drop();
+            }
+            return;
+        }
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled);
+            if (measured) {
+                stats.record(latencyMicros, error == null && response.statusCode() / 100 == 2);
+            }
+            inFlight.release();
+        });
+    }
+
+    private HttpRequest writeRequest() {
+        try {
+            if (options.getBatchSize() == 1) {
+                return hitPost("/hit", hitMapper.writeValueAsBytes(hits.next()));
+            }
+            List<HitDto> batch = new ArrayList<>(options.getBatchSize());
+            for (int i = 0; i < options.getBatchSize(); i++) {
+                batch.add(hits.next());
+            }
+            return hitPost("/hits", hitMapper.writeValueAsBytes(batch));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize hits", e);
+        }
+    }
+
+    private HttpRequest readRequest() {
+        LocalDateTime now = LocalDateTime.now();
+        StringBuilder query = new StringBuilder("/stats?start=")
+                .append(encode(now.minusDays(1).format(FORMATTER)))
+                .append("&end=")
+                .append(encode(now.plusMinutes(1).format(FORMATTER)))
+                .append("&unique=")
+                .append(random.nextDouble() < options.getUniqueRatio());
+        int uriCount = 1 + random.nextInt(10);
+        for (int i = 0; i < uriCount; i++) {
+            query.append("&uris=").append(encode(hits.randomUri(random)));
+        }
+        return HttpRequest.newBuilder(URI.create(options.getTarget() + query.toString()))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest hitPost(String path, byte[] body) {
+        return HttpRequest.newBuilder(URI.create(options.getTarget() + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", hitContentType)
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private long nextGapNanos() {
+        double meanNanos = TimeUnit.SECONDS.toNanos(1) / options.getRps();
+        if (!options.isPoisson()) {
+            return (long) meanNanos;
+        }
+        return (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+    }
+
+    private void report(double seconds) throws IOException {
+        System.out.printf("Measured %.1fs at a target of %.1f requests/s%n", seconds, options.getRps());
+        writes.print(System.out, seconds);
+        reads.print(System.out, seconds);
+
+        if (Objects.nonNull(options.getReport())) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("target", options.getTarget().toString());
+            report.put("rps", options.getRps());
+            report.put("seconds", seconds);
+            report.put("arrival", options.isPoisson() ? "poisson" : "uniform");
+            report.put("readRatio", options.getReadRatio());
+            report.put("batchSize", options.getBatchSize());
+            report.put("format", options.isCbor() ? "cbor" : "json");
+            report.put("write", writes.summary(seconds));
+            report.put("read", reads.summary(seconds));
+            objectMapper.enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(options.getReport().toFile(), report);
+            System.out.println("Report written to " + options.getReport());
+        }
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
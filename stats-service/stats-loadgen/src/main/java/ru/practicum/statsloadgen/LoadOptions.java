@@ -0,0 +1,117 @@
+package ru.practicum.statsloadgen;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Getter
+@ToString
+public class LoadOptions {
+    private static final String USAGE = "Options (all optional, as --name=value):\n" +
+            "  target        stats server url, default http://localhost:9090\n" +
+            "  rps           target request rate, default 500\n" +
+            "  duration      measured seconds, default 60\n" +
+            "  warmup        unmeasured seconds before that, default 10\n" +
+            "  arrival       poisson or uniform inter-arrival times, default poisson\n" +
+            "  read-ratio    share of GET /stats requests, default 0.1\n" +
+            "  unique-ratio  share of reads with unique=true, default 0.5\n" +
+            "  batch-size    hits per write, 1 posts to /hit, more to /hits, default 1\n" +
+            "  format        json or cbor hit payloads, cbor sends epoch millis instead of timestamps, default json\n" +
+            "  uris          synthetic uri count, default 1000\n" +
+            "  ips           synthetic ip count, default 100000\n" +
+            "  seed          random seed, default 42\n" +
+            "  replay        NDJSON file of recorded hits to replay instead of synthetic ones\n" +
+            "  max-in-flight requests waiting for a response before new ones are dropped, default 10000\n" +
+            "  report        file to write the JSON report to";
+
+    private URI target = URI.create("http://localhost:9090");
+    private double rps = 500;
+    private Duration duration = Duration.ofSeconds(60);
+    private Duration warmup = Duration.ofSeconds(10);
+    private boolean poisson = true;
+    private double readRatio = 0.1;
+    private double uniqueRatio = 0.5;
+    private int batchSize = 1;
+    private boolean cbor;
+    private int uris = 1000;
+    private int ips = 100_000;
+    private long seed = 42;
+    private Path replay;
+    private int maxInFlight = 10_000;
+    private Path report;
+
+    public static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Unexpected argument '" + arg + "'\n" + USAGE);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            options.set(name, value);
+        }
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "target":
+                target = URI.create(value.endsWith("/") ? value.substring(0, value.length() - 1) : value);
+                break;
+            case "rps":
+                rps = Double.parseDouble(value);
+                break;
+            case "duration":
+                duration = Duration.ofSeconds(Long.parseLong(value));
+                break;
+            case "warmup":
+                warmup = Duration.ofSeconds(Long.parseLong(value));
+                break;
+            case "arrival":
+                if (!"poisson".equals(value) && !"uniform".equals(value)) {
+                    throw new IllegalArgumentException("arrival must be poisson or uniform\n" + USAGE);
+                }
+                poisson = "poisson".equals(value);
+                break;
+            case "read-ratio":
+                readRatio = Double.parseDouble(value);
+                break;
+            case "unique-ratio":
+                uniqueRatio = Double.parseDouble(value);
+                break;
+            case "batch-size":
+                batchSize = Integer.parseInt(value);
+                break;
+            case "format":
+                if (!"json".equals(value) && !"cbor".equals(value)) {
+                    throw new IllegalArgumentException("format must be json or cbor\n" + USAGE);
+                }
+                cbor = "cbor".equals(value);
+                break;
+            case "uris":
+                uris = Integer.parseInt(value);
+                break;
+            case "ips":
+                ips = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "replay":
+                replay = Paths.get(value);
+                break;
+            case "max-in-flight":
+                maxInFlight = Integer.parseInt(value);
+                break;
+            case "report":
+                report = Paths.get(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option '" + name + "'\n" + USAGE);
+        }
+    }
+}
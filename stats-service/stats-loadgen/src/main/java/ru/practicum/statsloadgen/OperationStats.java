@@ -0,0 +1,76 @@
+package ru.practicum.statsloadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counters of one request type. Latency is measured
+ * from the moment the request was scheduled, so queueing delay is not hidden.
+ */
+public class OperationStats {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final String name;
+    private final Histogram latency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    public void record(long latencyMicros, boolean success) {
+        latency.recordValue(Math.min(latencyMicros, MAX_LATENCY_MICROS));
+        if (success) {
+            succeeded.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    public void drop() {
+        dropped.increment();
+    }
+
+    public Map<String, Object> summary(double seconds) {
+        long completed = succeeded.sum() + failed.sum();
+        long requests = completed + dropped.sum();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", requests);
+        summary.put("succeeded", succeeded.sum());
+        summary.put("failed", failed.sum());
+        summary.put("dropped", dropped.sum());
+        summary.put("throughputPerSecond", completed / seconds);
+        summary.put("errorRate", requests == 0 ? 0.0 : (double) (failed.sum() + dropped.sum()) / requests);
+        summary.put("latencyMillis", latencySummary());
+        return summary;
+    }
+
+    public void print(PrintStream out, double seconds) {
+        Map<String, Object> summary = summary(seconds);
+        out.printf("%-6s requests=%d ok=%d failed=%d dropped=%d throughput=%.1f/s errors=%.3f%%%n",
+                name, summary.get("requests"), succeeded.sum(), failed.sum(), dropped.sum(),
+                summary.get("throughputPerSecond"), (double) summary.get("errorRate") * 100);
+        out.printf("       latency ms %s%n", summary.get("latencyMillis"));
+    }
+
+    private Map<String, Double> latencySummary() {
+        // requests still in flight past the drain timeout may keep recording, so read from a copy
+        Histogram snapshot = latency.copy();
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("mean", snapshot.getMean() / 1000);
+        percentiles.put("p50", snapshot.getValueAtPercentile(50) / 1000.0);
+        percentiles.put("p90", snapshot.getValueAtPercentile(90) / 1000.0);
+        percentiles.put("p99", snapshot.getValueAtPercentile(99) / 1000.0);
+        percentiles.put("p99.9", snapshot.getValueAtPercentile(99.9) / 1000.0);
+        percentiles.put("max", snapshot.getMaxValue() / 1000.0);
+        return percentiles;
+    }
+}
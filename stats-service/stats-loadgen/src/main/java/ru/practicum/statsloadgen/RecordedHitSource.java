@@ -0,0 +1,56 @@
+package ru.practicum.statsloadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.practicum.statsdto.HitDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Replays hits recorded one JSON object per line, starting over once the file is exhausted.
+ * Recorded timestamps are sent unchanged.
+ */
+public class RecordedHitSource implements HitSource {
+    private final List<HitDto> hits;
+    private final List<String> uris;
+    private int next;
+
+    public RecordedHitSource(Path file, ObjectMapper objectMapper) {
+        try {
+            List<HitDto> loaded = new ArrayList<>();
+            for (String line : Files.readAllLines(file)) {
+                if (!line.isBlank()) {
+                    loaded.add(objectMapper.readValue(line, HitDto.class));
+                }
+            }
+            if (loaded.isEmpty()) {
+                throw new IllegalArgumentException("No hits recorded in " + file);
+            }
+            this.hits = loaded;
+            this.uris = loaded.stream()
+                    .map(HitDto::getUri)
+                    .distinct()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read recorded hits from " + file, e);
+        }
+    }
+
+    @Override
+    public HitDto next() {
+        HitDto hit = hits.get(next);
+        next = (next + 1) % hits.size();
+        return hit;
+    }
+
+    @Override
+    public String randomUri(SplittableRandom random) {
+        return uris.get(random.nextInt(uris.size()));
+    }
+}
@@ -0,0 +1,45 @@
+package ru.practicum.statsloadgen;
+
+import ru.practicum.statsdto.HitDto;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+/**
+ * Hits for uniformly chosen uris and ips, stamped with the current time.
+ */
+public class SyntheticHitSource implements HitSource {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final SplittableRandom random;
+    private final int uris;
+    private final int ips;
+    private final boolean epochMillis;
+
+    public SyntheticHitSource(long seed, int uris, int ips, boolean epochMillis) {
+        this.random = new SplittableRandom(seed);
+        this.uris = uris;
+        this.ips = ips;
+        this.epochMillis = epochMillis;
+    }
+
+    @Override
+    public HitDto next() {
+        int ip = random.nextInt(ips);
+        LocalDateTime now = LocalDateTime.now();
+        return HitDto.builder()
+                .app("ewm-main-service")
+                .uri("/events/" + random.nextInt(uris))
+                .ip(String.format("10.%d.%d.%d", (ip >> 16) & 0xff, (ip >> 8) & 0xff, ip & 0xff))
+                .timestamp(epochMillis ? null : now.format(FORMATTER))
+                .epochMillis(epochMillis ? now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : null)
+                .build();
+    }
+
+    @Override
+    public String randomUri(SplittableRandom random) {
+        return "/events/" + random.nextInt(uris);
+    }
+}
@@ -1,38 +1,193 @@
 package ru.practicum.statsserver.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.statsdto.EntityStatsQueryDto;
+import ru.practicum.statsdto.HitBatchResultDto;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.StatsQueryDto;
+import ru.practicum.statsdto.ViewEntityStatsDto;
+import ru.practicum.statsdto.ViewIpStatsDto;
 import ru.practicum.statsdto.ViewStatsDto;
+import ru.practicum.statsdto.ViewStatsSeriesDto;
+import ru.practicum.statsdto.ViewStatsWindowDto;
+import ru.practicum.statsserver.model.StatsPage;
 import ru.practicum.statsserver.service.StatsService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 
 @Slf4j
 @RestController
 @RequiredArgsConstructor
 public class StatsController {
+    private static final String ERROR_BOUND_HEADER = "X-Stats-Error-Bound";
+    private static final String NEXT_CURSOR_HEADER = "X-Stats-Next-Cursor";
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final StatsService service;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
-    public void addRecord(@RequestBody HitDto request) {
-        log.info("StatsController: Add hit '{}'", request);
-        service.saveRecord(request);
+    public void addRecord(@RequestBody HitDto request,
+                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        log.debug("StatsController: Add hit '{}'", request);
+        service.saveRecord(request, idempotencyKey);
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchResultDto addRecords(@RequestBody List<HitDto> request,
+                                        @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false)
+                                        String idempotencyKey) {
+        log.debug("StatsController: Add batch of {} hits", request.size());
+        return service.saveRecords(request, idempotencyKey);
     }
 
     @GetMapping("/stats")
-    public List<ViewStatsDto> getStatistics(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    public ResponseEntity<List<ViewStatsDto>> getStatistics(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
                                             LocalDateTime start,
                                             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
                                             LocalDateTime end,
                                             @RequestParam(required = false) List<String> uris,
-                                            @RequestParam(defaultValue = "false") Boolean unique) {
+                                            @RequestParam(defaultValue = "false") Boolean unique,
+                                            @RequestParam(defaultValue = "false") Boolean approximate,
+                                            @RequestParam(required = false) Integer limit,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "false") Boolean rollup) {
+        if (rollup) {
+            log.info("StatsController: Get stats rolled up over {}", uris);
+            return ResponseEntity.ok(service.getRollupStats(start, end, uris, unique));
+        }
         log.info("StatsController: Get all stats");
-        return service.getAllStats(start, end, uris, unique);
+        StatsPage page = service.getStats(start, end, uris, unique, approximate, limit, cursor);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (service.isApproximate(start, unique, approximate)) {
+            response.header(ERROR_BOUND_HEADER, String.valueOf(service.getApproximationErrorBound()));
+        }
+        if (Objects.nonNull(page.getNextCursor())) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getStats());
+    }
+
+    @PostMapping("/stats/query")
+    public ResponseEntity<List<ViewStatsWindowDto>> queryStatistics(@RequestBody StatsQueryDto request) {
+        log.info("StatsController: Query stats of {} uris over {} windows",
+                Objects.isNull(request.getUris()) ? 0 : request.getUris().size(),
+                Objects.isNull(request.getWindows()) ? 0 : request.getWindows().size());
+        List<ViewStatsWindowDto> stats = service.queryStats(request);
+
+        if (service.isApproximate(request)) {
+            return ResponseEntity.ok()
+                    .header(ERROR_BOUND_HEADER, String.valueOf(service.getApproximationErrorBound()))
+                    .body(stats);
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    @PostMapping("/stats/entities")
+    public ResponseEntity<ViewEntityStatsDto> getEntityStatistics(@RequestBody EntityStatsQueryDto request) {
+        log.info("StatsController: Get stats of {} {} of app '{}'",
+                Objects.isNull(request.getIds()) ? 0 : request.getIds().length, request.getEntityType(),
+                request.getApp());
+        ViewEntityStatsDto stats = service.getEntityStats(request);
+
+        if (service.isApproximate(request)) {
+            return ResponseEntity.ok()
+                    .header(ERROR_BOUND_HEADER, String.valueOf(service.getApproximationErrorBound()))
+                    .body(stats);
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/stats/top")
+    public ResponseEntity<List<ViewStatsDto>> getTopStatistics(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                               LocalDateTime start,
+                                                               @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                               LocalDateTime end,
+                                                               @RequestParam(required = false) List<String> uris,
+                                                               @RequestParam(defaultValue = "false") Boolean unique,
+                                                               @RequestParam(defaultValue = "false") Boolean approximate,
+                                                               @RequestParam(defaultValue = "10") Integer limit) {
+        log.info("StatsController: Get top {} stats", limit);
+        List<ViewStatsDto> stats = service.getTopStats(start, end, uris, unique, approximate, limit);
+
+        if (service.isApproximate(start, unique, approximate)) {
+            return ResponseEntity.ok()
+                    .header(ERROR_BOUND_HEADER, String.valueOf(service.getApproximationErrorBound()))
+                    .body(stats);
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/stats/trending")
+    public List<ViewStatsDto> getTrending(@RequestParam(defaultValue = "5") Integer window,
+                                          @RequestParam(defaultValue = "10") Integer limit) {
+        log.info("StatsController: Get top {} uris of the last {} minutes", limit, window);
+        return service.getTrending(window, limit);
+    }
+
+    @GetMapping("/stats/top-ips")
+    public List<ViewIpStatsDto> getTopIps(@RequestParam(defaultValue = "5") Integer window,
+                                          @RequestParam(defaultValue = "10") Integer limit) {
+        log.info("StatsController: Get top {} ips of the last {} minutes", limit, window);
+        return service.getTopIps(window, limit);
+    }
+
+    @GetMapping("/stats/series")
+    public List<ViewStatsSeriesDto> getSeries(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                              LocalDateTime start,
+                                              @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                              LocalDateTime end,
+                                              @RequestParam(required = false) List<String> uris,
+                                              @RequestParam(defaultValue = "1h") String interval,
+                                              @RequestParam(defaultValue = "false") Boolean unique) {
+        log.info("StatsController: Get {} series", interval);
+        return service.getSeries(start, end, uris, interval, unique);
+    }
+
+    @GetMapping(value = "/stats", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStatistics(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                                  LocalDateTime start,
+                                                                  @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+                                                                  LocalDateTime end,
+                                                                  @RequestParam(required = false) List<String> uris,
+                                                                  @RequestParam(defaultValue = "false") Boolean unique,
+                                                                  @RequestParam(defaultValue = "false") Boolean approximate) {
+        log.info("StatsController: Stream all stats");
+        service.validateQuery(start, end, unique, approximate);
+
+        StreamingResponseBody body = outputStream -> service.streamStats(start, end, uris, unique, approximate,
+                dto -> writeLine(outputStream, dto));
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.valueOf(NDJSON_VALUE));
+        if (service.isApproximate(start, unique, approximate)) {
+            response.header(ERROR_BOUND_HEADER, String.valueOf(service.getApproximationErrorBound()));
+        }
+        return response.body(body);
+    }
+
+    private void writeLine(OutputStream outputStream, ViewStatsDto dto) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(dto));
+            outputStream.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
-}
\ No newline at end of file
+}
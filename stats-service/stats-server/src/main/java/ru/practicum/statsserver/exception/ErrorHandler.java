@@ -53,4 +53,18 @@ public class ErrorHandler extends ResponseEntityExceptionHandler {
                 .status(HttpStatus.BAD_REQUEST)
                 .body(response);
     }
+
+    @ExceptionHandler(value = IngestBufferFullException.class)
+    public ResponseEntity<Object> handleIngestBufferFull(final IngestBufferFullException ex) {
+        Map<String, Object> response = new LinkedHashMap<>();
+
+        response.put("timestamp", LocalDateTime.now().format(DATE_TIME_FORMATTER));
+        response.put("status", HttpStatus.SERVICE_UNAVAILABLE.name());
+        response.put("message", ex.getMessage());
+
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response);
+    }
 }
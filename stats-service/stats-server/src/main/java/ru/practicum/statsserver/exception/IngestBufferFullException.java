@@ -0,0 +1,11 @@
+package ru.practicum.statsserver.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class IngestBufferFullException extends RuntimeException {
+    public IngestBufferFullException(String message) {
+        super(message);
+    }
+}
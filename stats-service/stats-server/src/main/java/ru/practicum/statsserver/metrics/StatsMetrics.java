@@ -0,0 +1,119 @@
+package ru.practicum.statsserver.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the hit pipeline. Ingest meters are registered up front since they are hit on every request;
+ * query meters are looked up by their tags, which the registry caches.
+ */
+@Component
+public class StatsMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Counter hitCounter;
+    private final Counter batchCounter;
+    private final DistributionSummary batchSize;
+    private final Timer writeTimer;
+    private final Timer insertTimer;
+    private final Counter insertedRows;
+
+    public StatsMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        this.hitCounter = Counter.builder("stats.ingest.hits")
+                .tag("endpoint", "hit")
+                .register(meterRegistry);
+        this.batchCounter = Counter.builder("stats.ingest.hits")
+                .tag("endpoint", "hits")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("stats.ingest.batch.size")
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("stats.ingest.write")
+                .description("Whole write of a batch: dictionaries, insert, rollups and sketches")
+                .register(meterRegistry);
+        this.insertTimer = Timer.builder("stats.insert")
+                .description("Batched insert into the stats table")
+                .register(meterRegistry);
+        this.insertedRows = Counter.builder("stats.insert.rows")
+                .register(meterRegistry);
+    }
+
+    public void recordHit() {
+        hitCounter.increment();
+    }
+
+    public void recordBatch(int size) {
+        batchCounter.increment(size);
+        batchSize.record(size);
+    }
+
+    public <T> T timeWrite(Supplier<T> write) {
+        return writeTimer.record(write);
+    }
+
+    public <T> T timeInsert(int rows, Supplier<T> insert) {
+        T result = insertTimer.record(insert);
+        insertedRows.increment(rows);
+        return result;
+    }
+
+    /**
+     * Times a query. The type is hits, unique or approximate and the scope tells
+     * a query filtered by uris from one over all of them.
+     */
+    public <T> T timeQuery(String query, String type, List<String> uris, Supplier<T> action) {
+        return timeQuery(query, type, isFiltered(uris), action);
+    }
+
+    public <T> T timeQuery(String query, String type, boolean filtered, Supplier<T> action) {
+        return queryTimer(query, type, filtered).record(action);
+    }
+
+    public void timeStream(String type, List<String> uris, Runnable action) {
+        queryTimer("stream", type, isFiltered(uris)).record(action);
+    }
+
+    public void recordResults(String query, String type, long size) {
+        DistributionSummary.builder("stats.query.results")
+                .tag("query", query)
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    /**
+     * Rows read from the database by one repository query, summed over all shards.
+     */
+    public void recordRowsRead(String query, long rows) {
+        DistributionSummary.builder("stats.query.rows")
+                .tag("query", query)
+                .register(meterRegistry)
+                .record(rows);
+    }
+
+    public static String queryType(Boolean unique, Boolean approximate) {
+        if (unique && approximate) {
+            return "approximate";
+        }
+        return unique ? "unique" : "hits";
+    }
+
+    private Timer queryTimer(String query, String type, boolean filtered) {
+        return Timer.builder("stats.query")
+                .tag("query", query)
+                .tag("type", type)
+                .tag("scope", filtered ? "filtered" : "all")
+                .register(meterRegistry);
+    }
+
+    private static boolean isFiltered(List<String> uris) {
+        return Objects.nonNull(uris) && !uris.isEmpty();
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum DictionaryType {
+    APP("stats_apps"),
+    URI("stats_uris"),
+    IP("stats_ips");
+
+    private final String table;
+}
@@ -20,16 +20,25 @@ public class ItemStats {
     @Column(name = "id")
     private Long id;
 
-    @Column(name = "app", nullable = false)
+    @Transient
     private String app;
 
-    @Column(name = "uri", nullable = false)
+    @Transient
     private String uri;
 
-    @Column(name = "ip", nullable = false, length = 32)
-    private String ip;
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
+
+    @Column(name = "uri_id", nullable = false)
+    private Integer uriId;
+
+    @Column(name = "ip", nullable = false, length = 16)
+    private byte[] ip;
+
+    @Column(name = "ip_id")
+    private Integer ipId;
 
     @Column(name = "request_date_time", nullable = false)
     private LocalDateTime requestDateTime;
 
-}
\ No newline at end of file
+}
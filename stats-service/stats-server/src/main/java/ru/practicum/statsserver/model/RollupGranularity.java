@@ -0,0 +1,39 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupGranularity {
+    MINUTE(ChronoUnit.MINUTES, "stats_rollup_minute", "1m", "minute"),
+    HOUR(ChronoUnit.HOURS, "stats_rollup_hour", "1h", "hour"),
+    DAY(ChronoUnit.DAYS, "stats_rollup_day", "1d", "day");
+
+    private final ChronoUnit unit;
+    private final String table;
+    private final String interval;
+    private final String truncField;
+
+    public static RollupGranularity fromInterval(String interval) {
+        for (RollupGranularity granularity : values()) {
+            if (granularity.interval.equals(interval)) {
+                return granularity;
+            }
+        }
+        throw new NoValidParameterRequest("Unknown interval '" + interval + "', expected 1m, 1h or 1d!");
+    }
+
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime dateTime) {
+        LocalDateTime floor = floor(dateTime);
+        return floor.equals(dateTime) ? floor : floor.plus(1, unit);
+    }
+}
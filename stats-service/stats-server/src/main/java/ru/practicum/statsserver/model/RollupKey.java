@@ -0,0 +1,21 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+public class RollupKey implements Comparable<RollupKey> {
+    Integer appId;
+    Integer uriId;
+    LocalDateTime bucket;
+
+    @Override
+    public int compareTo(RollupKey other) {
+        int result = uriId.compareTo(other.uriId);
+        if (result == 0) {
+            result = appId.compareTo(other.appId);
+        }
+        return result == 0 ? bucket.compareTo(other.bucket) : result;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum.statsserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Half-open time range [from, to) answered either by one rollup table or,
+ * when granularity is null, by raw rows of the stats table.
+ */
+@Data
+@AllArgsConstructor
+public class RollupSegment {
+    private RollupGranularity granularity;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    public boolean isRaw() {
+        return Objects.isNull(granularity);
+    }
+}
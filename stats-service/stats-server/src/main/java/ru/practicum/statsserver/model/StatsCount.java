@@ -0,0 +1,16 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+
+import java.util.Comparator;
+
+@Value
+public class StatsCount {
+    public static final Comparator<StatsCount> BY_HITS_DESC = Comparator.comparing(StatsCount::getHits).reversed()
+            .thenComparing(StatsCount::getAppId)
+            .thenComparing(StatsCount::getUriId);
+
+    Integer appId;
+    Integer uriId;
+    Long hits;
+}
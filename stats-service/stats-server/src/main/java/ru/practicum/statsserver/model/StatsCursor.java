@@ -0,0 +1,45 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in a stats result ordered by hits desc, app id and uri id.
+ */
+@Value
+public class StatsCursor {
+    Long hits;
+    Integer appId;
+    Integer uriId;
+
+    public static StatsCursor of(StatsCount count) {
+        return new StatsCursor(count.getHits(), count.getAppId(), count.getUriId());
+    }
+
+    public static StatsCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return new StatsCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new NoValidParameterRequest(String.format("Cursor '%s' is not valid", cursor));
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.format("%d:%d:%d", hits, appId, uriId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isBefore(StatsCount count) {
+        if (!hits.equals(count.getHits())) {
+            return hits > count.getHits();
+        }
+        if (!appId.equals(count.getAppId())) {
+            return appId < count.getAppId();
+        }
+        return uriId < count.getUriId();
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+
+@Value
+public class StatsKey {
+    Integer appId;
+    Integer uriId;
+}
@@ -0,0 +1,12 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+import ru.practicum.statsdto.ViewStatsDto;
+
+import java.util.List;
+
+@Value
+public class StatsPage {
+    List<ViewStatsDto> stats;
+    String nextCursor;
+}
@@ -0,0 +1,14 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+public class StatsPoint {
+    Integer appId;
+    Integer uriId;
+    LocalDateTime bucket;
+    Long hits;
+    Long uniqueHits;
+}
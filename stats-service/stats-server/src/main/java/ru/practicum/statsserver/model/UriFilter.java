@@ -0,0 +1,31 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The uris a query is limited to: dictionary ids of exact uris and patterns the database matches
+ * against the uri dictionary within the query itself. A query without a filter passes null.
+ */
+@Value
+public class UriFilter {
+    List<Integer> ids;
+    List<UriPattern> patterns;
+
+    public static UriFilter of(List<Integer> ids) {
+        return Objects.isNull(ids) ? null : new UriFilter(ids, List.of());
+    }
+
+    public boolean hasPatterns() {
+        return !patterns.isEmpty();
+    }
+
+    /**
+     * Whether the filter matches no uri at all.
+     */
+    public boolean isEmpty() {
+        return ids.isEmpty() && patterns.isEmpty();
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.statsserver.model;
+
+import lombok.Value;
+
+/**
+ * A uri pattern where '*' stands for any characters, e.g. /events/*. The literal prefix before the first '*'
+ * becomes a range over the text_pattern_ops index of the uri dictionary, so a prefix pattern never scans
+ * the whole dictionary; the rest of the pattern is checked with like.
+ */
+@Value
+public class UriPattern {
+    public static final char WILDCARD = '*';
+
+    String pattern;
+    /**
+     * Inclusive lower bound of the matching uris.
+     */
+    String from;
+    /**
+     * Exclusive upper bound of the matching uris, null when the pattern starts with a wildcard.
+     */
+    String to;
+    String like;
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf(WILDCARD) >= 0;
+    }
+
+    public static UriPattern of(String pattern) {
+        String prefix = pattern.substring(0, pattern.indexOf(WILDCARD));
+        return new UriPattern(pattern, prefix, upperBound(prefix), toLikePattern(pattern));
+    }
+
+    /**
+     * Whether the uri fits the pattern, the same way like does.
+     */
+    public boolean matches(String uri) {
+        String[] parts = pattern.split("\\" + WILDCARD, -1);
+        if (!uri.startsWith(parts[0])) {
+            return false;
+        }
+        int position = parts[0].length();
+        for (int i = 1; i < parts.length - 1; i++) {
+            int found = uri.indexOf(parts[i], position);
+            if (found < 0) {
+                return false;
+            }
+            position = found + parts[i].length();
+        }
+        String suffix = parts[parts.length - 1];
+        return uri.length() - suffix.length() >= position && uri.endsWith(suffix);
+    }
+
+    /**
+     * The least string above every string with the prefix: its last code point that can be incremented,
+     * incremented. UTF-8 keeps the code point order, so the bound holds for the byte-wise ~<~ as well.
+     */
+    private static String upperBound(String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int last = prefix.codePointBefore(end);
+            int start = end - Character.charCount(last);
+            if (last < Character.MAX_CODE_POINT) {
+                int next = last + 1 == Character.MIN_SURROGATE ? Character.MAX_SURROGATE + 1 : last + 1;
+                return prefix.substring(0, start) + new String(Character.toChars(next));
+            }
+            end = start;
+        }
+        return null;
+    }
+
+    private static String toLikePattern(String pattern) {
+        StringBuilder like = new StringBuilder(pattern.length() + 8);
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == WILDCARD) {
+                like.append('%');
+            } else {
+                if (c == '%' || c == '_' || c == '\\') {
+                    like.append('\\');
+                }
+                like.append(c);
+            }
+        }
+        return like.toString();
+    }
+}
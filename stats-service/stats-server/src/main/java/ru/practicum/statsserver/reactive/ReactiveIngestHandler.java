@@ -0,0 +1,104 @@
+package ru.practicum.statsserver.reactive;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsserver.exception.IngestBufferFullException;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+import ru.practicum.statsserver.service.HitBuffer;
+import ru.practicum.statsserver.service.StatsService;
+import ru.practicum.statsserver.wal.HitLog;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Handles /hit and /hits on the reactive ingest port. With the write-behind buffer enabled and no hit log
+ * a hit is only enqueued in memory, so it is saved right on the event loop. Synchronous writes block on
+ * the database and hit log appends may map a new segment or fsync, so both are moved to the bounded
+ * elastic scheduler instead.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.ingest.reactive.enabled", havingValue = "true")
+public class ReactiveIngestHandler {
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final ParameterizedTypeReference<List<HitDto>> HIT_LIST = new ParameterizedTypeReference<>() {
+    };
+
+    private final StatsService service;
+    private final HitBuffer buffer;
+    private final HitLog hitLog;
+
+    public Mono<ServerResponse> addRecord(ServerRequest request) {
+        String idempotencyKey = request.headers().firstHeader(IDEMPOTENCY_KEY_HEADER);
+        return request.bodyToMono(HitDto.class)
+                .switchIfEmpty(Mono.error(new NoValidParameterRequest("Request body is missing")))
+                .flatMap(hit -> save(() -> {
+                    service.saveRecord(hit, idempotencyKey);
+                    return hit;
+                }))
+                .flatMap(hit -> ServerResponse.status(HttpStatus.CREATED).build())
+                .onErrorResume(this::toErrorResponse);
+    }
+
+    public Mono<ServerResponse> addRecords(ServerRequest request) {
+        String idempotencyKey = request.headers().firstHeader(IDEMPOTENCY_KEY_HEADER);
+        return request.bodyToMono(HIT_LIST)
+                .switchIfEmpty(Mono.error(new NoValidParameterRequest("Request body is missing")))
+                .flatMap(hits -> save(() -> service.saveRecords(hits, idempotencyKey)))
+                .flatMap(result -> ServerResponse.status(HttpStatus.CREATED)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(result))
+                .onErrorResume(this::toErrorResponse);
+    }
+
+    private <T> Mono<T> save(Callable<T> action) {
+        Mono<T> saved = Mono.fromCallable(action);
+        return buffer.isEnabled() && !hitLog.isEnabled() ? saved : saved.subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<ServerResponse> toErrorResponse(Throwable error) {
+        if (error instanceof NoValidParameterRequest) {
+            return error(HttpStatus.BAD_REQUEST, error.getMessage());
+        }
+        if (error instanceof ServerWebInputException) {
+            return error(HttpStatus.BAD_REQUEST, ((ServerWebInputException) error).getReason());
+        }
+        if (error instanceof IngestBufferFullException) {
+            return error(HttpStatus.SERVICE_UNAVAILABLE, error.getMessage());
+        }
+        log.error("ReactiveIngestHandler: failed to save hits", error);
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, error.getMessage());
+    }
+
+    private Mono<ServerResponse> error(HttpStatus status, String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("timestamp", LocalDateTime.now().format(DATE_TIME_FORMATTER));
+        response.put("status", status.name());
+        response.put("message", message);
+
+        ServerResponse.BodyBuilder builder = ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON);
+        if (status == HttpStatus.SERVICE_UNAVAILABLE) {
+            builder.header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        return builder.bodyValue(response);
+    }
+}
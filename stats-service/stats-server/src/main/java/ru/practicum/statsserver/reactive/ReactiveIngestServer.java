@@ -0,0 +1,97 @@
+package ru.practicum.statsserver.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+/**
+ * Serves /hit and /hits on a separate Reactor Netty port next to the MVC application. A few event-loop
+ * threads keep any number of idle keep-alive connections, so the count of ingest clients is no longer
+ * bounded by the Tomcat thread pool. Queries stay on the MVC port.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.reactive.enabled", havingValue = "true")
+public class ReactiveIngestServer {
+    private final ReactiveIngestHandler handler;
+    private final ObjectMapper objectMapper;
+    private final int port;
+    private final int threads;
+    private final int maxBodySize;
+
+    private LoopResources loops;
+    private DisposableServer server;
+
+    public ReactiveIngestServer(ReactiveIngestHandler handler,
+                                ObjectMapper objectMapper,
+                                @Value("${stats.ingest.reactive.port:9091}") int port,
+                                @Value("${stats.ingest.reactive.threads:0}") int threads,
+                                @Value("${stats.ingest.reactive.max-body-size:16MB}") DataSize maxBodySize) {
+        this.handler = handler;
+        this.objectMapper = objectMapper;
+        this.port = port;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.maxBodySize = (int) maxBodySize.toBytes();
+    }
+
+    @PostConstruct
+    public void start() {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().maxInMemorySize(maxBodySize);
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    Jackson2CborDecoder cborDecoder = new Jackson2CborDecoder(Jackson2ObjectMapperBuilder.cbor().build(),
+                            MediaType.APPLICATION_CBOR);
+                    cborDecoder.setMaxInMemorySize(maxBodySize);
+                    codecs.customCodecs().registerWithDefaultConfig(cborDecoder);
+                })
+                .build();
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(routes(), strategies);
+
+        loops = LoopResources.create("stats-ingest", threads, true);
+        server = HttpServer.create()
+                .port(port)
+                .runOn(loops)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("ReactiveIngestServer: accepting hits on port {} with {} event-loop threads", port, threads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+        if (loops != null) {
+            loops.disposeLater().block();
+        }
+    }
+
+    private RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route(POST("/hit"), handler::addRecord)
+                .andRoute(POST("/hits"), handler::addRecords);
+    }
+}
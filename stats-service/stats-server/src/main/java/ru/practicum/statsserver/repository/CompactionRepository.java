@@ -0,0 +1,82 @@
+package ru.practicum.statsserver.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Queries of the raw hit compaction. Every call works on the shard selected by the caller.
+ */
+@Repository
+public class CompactionRepository {
+    private static final String FIND_WATERMARK_SQL = "select compacted_before from stats_compaction where id = 1";
+    private static final String SAVE_WATERMARK_SQL = "insert into stats_compaction (id, compacted_before) " +
+            "values (1, ?) on conflict (id) do update set compacted_before = excluded.compacted_before";
+    private static final String FIND_OLDEST_SQL = "select min(request_date_time) from stats " +
+            "where request_date_time < ?";
+    private static final String FIND_NEXT_SQL = "select min(request_date_time) from stats " +
+            "where request_date_time >= ? and request_date_time < ?";
+    private static final String FIND_HITS_SQL = "select id, app_id, uri_id, ip from stats " +
+            "where request_date_time >= ? and request_date_time < ? order by uri_id, app_id";
+    private static final String DELETE_SQL = "delete from stats where id = any(?) and request_date_time < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public CompactionRepository(DataSource dataSource,
+                                @Value("${stats.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    public LocalDateTime findWatermark() {
+        List<Timestamp> watermarks = jdbcTemplate.queryForList(FIND_WATERMARK_SQL, Timestamp.class);
+        return watermarks.isEmpty() ? null : watermarks.get(0).toLocalDateTime();
+    }
+
+    public void saveWatermark(LocalDateTime watermark) {
+        jdbcTemplate.update(SAVE_WATERMARK_SQL, Timestamp.valueOf(watermark));
+    }
+
+    /**
+     * The time of the earliest raw hit before the given one, or null when there is none.
+     */
+    public LocalDateTime findOldest(LocalDateTime before) {
+        return toLocalDateTime(jdbcTemplate.queryForObject(FIND_OLDEST_SQL, Timestamp.class,
+                Timestamp.valueOf(before)));
+    }
+
+    /**
+     * The time of the earliest raw hit in [from, to), or null when there is none.
+     */
+    public LocalDateTime findNext(LocalDateTime from, LocalDateTime to) {
+        return toLocalDateTime(jdbcTemplate.queryForObject(FIND_NEXT_SQL, Timestamp.class,
+                Timestamp.valueOf(from), Timestamp.valueOf(to)));
+    }
+
+    /**
+     * Raw hits of [from, to) ordered by uri and app. Must run in a transaction, the driver only
+     * honours the fetch size with auto-commit disabled.
+     */
+    public void findHits(LocalDateTime from, LocalDateTime to, RowCallbackHandler handler) {
+        streamingJdbcTemplate.query(FIND_HITS_SQL, handler, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Deletes the raw hits with the given ids before the given time.
+     */
+    public int deleteHits(Long[] ids, LocalDateTime before) {
+        return jdbcTemplate.update(DELETE_SQL, ids, Timestamp.valueOf(before));
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
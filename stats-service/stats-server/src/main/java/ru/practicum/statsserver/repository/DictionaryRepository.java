@@ -0,0 +1,93 @@
+package ru.practicum.statsserver.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statsserver.model.DictionaryType;
+import ru.practicum.statsserver.model.UriPattern;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import javax.transaction.Transactional;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+@Repository
+public class DictionaryRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public DictionaryRepository(ShardRouter router) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(router.getDictionaryDataSource());
+    }
+
+    /**
+     * Runs in its own transaction so that ids are committed before they get cached,
+     * even if the transaction that asked for them is rolled back later. When sharded the dictionary
+     * data source is not the transactional one, so every statement commits on its own.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Map<String, Integer> getOrCreateIds(DictionaryType type, Collection<String> values) {
+        Map<String, Integer> ids = createIds(type, values);
+        if (ids.size() < values.size()) {
+            ids.putAll(findIds(type, values.stream()
+                    .filter(value -> !ids.containsKey(value))
+                    .collect(Collectors.toList())));
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts the values that are not in the dictionary yet and returns the ids of those only. Values are
+     * inserted in sorted order, so concurrent inserts of overlapping sets never wait on each other in a cycle.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Map<String, Integer> createIds(DictionaryType type, Collection<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(String.format("insert into %s (value) select unnest(:values) order by 1 " +
+                        "on conflict (value) do nothing returning id, value", type.getTable()),
+                new MapSqlParameterSource("values", values.toArray(String[]::new)),
+                rs -> {
+                    ids.put(rs.getString("value"), rs.getInt("id"));
+                });
+        return ids;
+    }
+
+    public Map<String, Integer> findIds(DictionaryType type, Collection<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(String.format("select id, value from %s where value = any(:values)", type.getTable()),
+                new MapSqlParameterSource("values", values.toArray(String[]::new)),
+                rs -> {
+                    ids.put(rs.getString("value"), rs.getInt("id"));
+                });
+        return ids;
+    }
+
+    /**
+     * Ids of up to the given number of values matching the pattern, read through the index range of its prefix.
+     */
+    public List<Integer> findIdsMatching(DictionaryType type, UriPattern pattern, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", pattern.getFrom())
+                .addValue("like", pattern.getLike())
+                .addValue("limit", limit);
+        String sql = String.format("select id from %s where value ~>=~ :from and value like :like", type.getTable());
+        if (Objects.nonNull(pattern.getTo())) {
+            params.addValue("to", pattern.getTo());
+            sql += " and value ~<~ :to";
+        }
+        return jdbcTemplate.queryForList(sql + " limit :limit", params, Integer.class);
+    }
+
+    public Map<Integer, String> findValues(DictionaryType type, Collection<Integer> ids) {
+        Map<Integer, String> values = new HashMap<>();
+        jdbcTemplate.query(String.format("select id, value from %s where id = any(:ids)", type.getTable()),
+                new MapSqlParameterSource("ids", ids.toArray(Integer[]::new)),
+                rs -> {
+                    values.put(rs.getInt("id"), rs.getString("value"));
+                });
+        return values;
+    }
+}
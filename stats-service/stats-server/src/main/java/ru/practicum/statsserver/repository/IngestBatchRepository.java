@@ -0,0 +1,39 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Keys of the write batches applied to a shard, so that a batch written again after a partial failure
+ * is applied only once. Every call works on the shard selected by the caller.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IngestBatchRepository {
+    private static final String INSERT_SQL = "insert into stats_ingest_batch (id, hits, created) " +
+            "values (?, ?, ?) on conflict (id) do nothing";
+    private static final String FIND_HITS_SQL = "select hits from stats_ingest_batch where id = ?";
+    private static final String DELETE_BEFORE_SQL = "delete from stats_ingest_batch where created < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Records the batch key and returns false if it was recorded before. A concurrent transaction
+     * recording the same key makes this call wait for its outcome.
+     */
+    public boolean insertIfAbsent(String id, int hits) {
+        return jdbcTemplate.update(INSERT_SQL, id, hits, Timestamp.valueOf(LocalDateTime.now())) > 0;
+    }
+
+    public int findHits(String id) {
+        return jdbcTemplate.queryForObject(FIND_HITS_SQL, Integer.class, id);
+    }
+
+    public int deleteBefore(LocalDateTime before) {
+        return jdbcTemplate.update(DELETE_BEFORE_SQL, Timestamp.valueOf(before));
+    }
+}
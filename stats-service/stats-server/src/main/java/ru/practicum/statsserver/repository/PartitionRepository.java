@@ -0,0 +1,56 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class PartitionRepository {
+    private static final String FIND_PARTITIONS_SQL = "select c.relname from pg_inherits i " +
+            "join pg_class c on c.oid = i.inhrelid " +
+            "where i.inhparent = 'stats'::regclass";
+    private static final String DELETE_BEFORE_SQL = "delete from %1$s where ctid = any(array(" +
+            "select ctid from %1$s where %2$s < ? limit ?))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findPartitionNames() {
+        return jdbcTemplate.queryForList(FIND_PARTITIONS_SQL, String.class);
+    }
+
+    /**
+     * Rows that were written to the default partition before this range existed are
+     * moved into the new partition, otherwise ATTACH PARTITION would be rejected.
+     */
+    @Transactional
+    public void createPartition(String name, LocalDate from, LocalDate to) {
+        Timestamp fromTimestamp = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp toTimestamp = Timestamp.valueOf(to.atStartOfDay());
+
+        jdbcTemplate.execute(String.format("create table %s (like stats including defaults)", name));
+        jdbcTemplate.update(String.format("with moved as (delete from stats_default " +
+                "where request_date_time >= ? and request_date_time < ? returning *) " +
+                "insert into %s select * from moved", name), fromTimestamp, toTimestamp);
+        jdbcTemplate.execute(String.format("alter table stats attach partition %s for values from ('%s') to ('%s')",
+                name, fromTimestamp, toTimestamp));
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute(String.format("drop table if exists %s", name));
+    }
+
+    /**
+     * Deletes up to the given number of rows whose time column is before the bound, so that a large
+     * backlog is retired in short statements instead of one long lock.
+     */
+    public int deleteBefore(String table, String column, LocalDate keepFrom, int limit) {
+        return jdbcTemplate.update(String.format(DELETE_BEFORE_SQL, table, column),
+                Timestamp.valueOf(keepFrom.atStartOfDay()), limit);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupKey;
+
+import java.sql.Timestamp;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class RollupRepository {
+    private static final String UPSERT_SQL = "insert into %1$s (app_id, uri_id, bucket, hits) " +
+            "values (:appId, :uriId, :bucket, :hits) " +
+            "on conflict (uri_id, app_id, bucket) do update set hits = %1$s.hits + excluded.hits";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void addHits(RollupGranularity granularity, Map<RollupKey, Long> hits) {
+        MapSqlParameterSource[] params = hits.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("appId", entry.getKey().getAppId())
+                        .addValue("uriId", entry.getKey().getUriId())
+                        .addValue("bucket", Timestamp.valueOf(entry.getKey().getBucket()))
+                        .addValue("hits", entry.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(String.format(UPSERT_SQL, granularity.getTable()), params);
+    }
+}
@@ -0,0 +1,229 @@
+package ru.practicum.statsserver.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.metrics.StatsMetrics;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupSegment;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsCursor;
+import ru.practicum.statsserver.model.StatsPoint;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Repository
+public class StatsQueryRepository {
+    private static final RowMapper<StatsCount> STATS_COUNT_MAPPER = (rs, rowNum) -> new StatsCount(
+            rs.getInt("app_id"),
+            rs.getInt("uri_id"),
+            rs.getLong("hits"));
+    private static final RowMapper<StatsPoint> STATS_POINT_MAPPER = (rs, rowNum) -> new StatsPoint(
+            rs.getInt("app_id"),
+            rs.getInt("uri_id"),
+            rs.getTimestamp("bucket").toLocalDateTime(),
+            rs.getLong("hits"),
+            rs.getObject("unique_hits", Long.class));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    private final ShardRouter router;
+    private final TransactionTemplate readTransaction;
+    private final StatsMetrics metrics;
+
+    public StatsQueryRepository(DataSource dataSource,
+                                ShardRouter router,
+                                PlatformTransactionManager transactionManager,
+                                StatsMetrics metrics,
+                                @Value("${stats.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.router = router;
+        this.metrics = metrics;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(fetchSize);
+        this.streamingJdbcTemplate = new NamedParameterJdbcTemplate(streaming);
+    }
+
+    public List<StatsCount> findHits(List<RollupSegment> segments, UriFilter uriFilter,
+                                     StatsCursor after, Integer limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = page(hitsSql(segments, uriFilter, params), after, limit, params);
+        return queryAll("hits", sql, params, limit);
+    }
+
+    public List<StatsCount> findUnique(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                                       StatsCursor after, Integer limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = page(uniqueSql(start, end, uriFilter, params), after, limit, params);
+        return queryAll("unique", sql, params, limit);
+    }
+
+    /**
+     * Streams shard after shard, so rows are ordered by hits within a shard only.
+     */
+    public void streamHits(List<RollupSegment> segments, UriFilter uriFilter, Consumer<StatsCount> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = page(hitsSql(segments, uriFilter, params), null, null, params);
+        streamAll("hits", sql, params, consumer);
+    }
+
+    public void streamUnique(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                             Consumer<StatsCount> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = page(uniqueSql(start, end, uriFilter, params), null, null, params);
+        streamAll("unique", sql, params, consumer);
+    }
+
+    /**
+     * Hits per interval bucket in one grouped pass; segments must not be coarser than the interval.
+     */
+    public List<StatsPoint> findSeries(List<RollupSegment> segments, RollupGranularity interval,
+                                       UriFilter uriFilter) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriCondition = UriFilterSql.and(uriFilter, params);
+        String field = interval.getTruncField();
+        List<String> selects = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+            selects.add(segment.isRaw()
+                    ? String.format("select date_trunc('%1$s', request_date_time) as bucket, app_id, uri_id, " +
+                    "count(*) as hits from stats " +
+                    "where request_date_time >= :from%2$d and request_date_time < :to%2$d %3$s" +
+                    "group by 1, app_id, uri_id", field, i, uriCondition)
+                    : String.format("select date_trunc('%1$s', bucket) as bucket, app_id, uri_id, hits from %2$s " +
+                    "where bucket >= :from%3$d and bucket < :to%3$d %4$s",
+                    field, segment.getGranularity().getTable(), i, uriCondition));
+        }
+
+        String sql = "select bucket, app_id, uri_id, sum(hits) as hits, cast(null as bigint) as unique_hits from (" +
+                String.join(" union all ", selects) +
+                ") s group by bucket, app_id, uri_id order by app_id, uri_id, bucket";
+        return queryAllPoints("series", sql, params);
+    }
+
+    public List<StatsPoint> findUniqueSeries(LocalDateTime from, LocalDateTime to, RollupGranularity interval,
+                                             UriFilter uriFilter) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = String.format("select date_trunc('%s', request_date_time) as bucket, app_id, uri_id, " +
+                "count(*) as hits, count(distinct ip) as unique_hits from stats " +
+                "where request_date_time >= :from and request_date_time < :to %s" +
+                "group by 1, app_id, uri_id order by app_id, uri_id, bucket",
+                interval.getTruncField(), UriFilterSql.and(uriFilter, params));
+        return queryAllPoints("unique_series", sql, params);
+    }
+
+    /**
+     * Every uri lives on exactly one shard, so the per-shard rows never overlap and
+     * merging is a sort of the union followed by the limit.
+     */
+    private List<StatsCount> queryAll(String name, String sql, MapSqlParameterSource params, Integer limit) {
+        List<List<StatsCount>> shardRows = router.scatter(shard -> jdbcTemplate.query(sql, params, STATS_COUNT_MAPPER));
+        metrics.recordRowsRead(name, shardRows.stream().mapToLong(List::size).sum());
+        return shardRows.stream()
+                .flatMap(List::stream)
+                .sorted(StatsCount.BY_HITS_DESC)
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+    }
+
+    private List<StatsPoint> queryAllPoints(String name, String sql, MapSqlParameterSource params) {
+        List<List<StatsPoint>> shardRows = router.scatter(shard -> jdbcTemplate.query(sql, params, STATS_POINT_MAPPER));
+        metrics.recordRowsRead(name, shardRows.stream().mapToLong(List::size).sum());
+        return shardRows.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(StatsPoint::getAppId)
+                        .thenComparing(StatsPoint::getUriId)
+                        .thenComparing(StatsPoint::getBucket))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Each shard streams in its own read-only transaction: the Postgres driver only honours
+     * the fetch size with auto-commit disabled.
+     */
+    private void streamAll(String name, String sql, MapSqlParameterSource params, Consumer<StatsCount> consumer) {
+        AtomicLong rows = new AtomicLong();
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            router.runOn(shard, () -> readTransaction.executeWithoutResult(status ->
+                    streamingJdbcTemplate.query(sql, params, rs -> {
+                        rows.incrementAndGet();
+                        consumer.accept(STATS_COUNT_MAPPER.mapRow(rs, 0));
+                    })));
+        }
+        metrics.recordRowsRead(name, rows.get());
+    }
+
+    private String hitsSql(List<RollupSegment> segments, UriFilter uriFilter, MapSqlParameterSource params) {
+        String uriCondition = UriFilterSql.and(uriFilter, params);
+        List<String> selects = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+            selects.add(segment.isRaw()
+                    ? String.format("select app_id, uri_id, count(*) as hits from stats " +
+                    "where request_date_time >= :from%1$d and request_date_time < :to%1$d %2$s" +
+                    "group by app_id, uri_id", i, uriCondition)
+                    : String.format("select app_id, uri_id, hits from %1$s " +
+                    "where bucket >= :from%2$d and bucket < :to%2$d %3$s", segment.getGranularity().getTable(), i, uriCondition));
+        }
+
+        return "select app_id, uri_id, sum(hits) as hits from (" +
+                String.join(" union all ", selects) +
+                ") s group by app_id, uri_id";
+    }
+
+    private String uniqueSql(LocalDateTime start, LocalDateTime end, UriFilter uriFilter,
+                             MapSqlParameterSource params) {
+        params.addValue("start", Timestamp.valueOf(start));
+        params.addValue("end", Timestamp.valueOf(end));
+        return "select app_id, uri_id, count(distinct ip) as hits from stats " +
+                "where request_date_time between :start and :end " + UriFilterSql.and(uriFilter, params) +
+                "group by app_id, uri_id";
+    }
+
+    private String page(String aggregateSql, StatsCursor after, Integer limit, MapSqlParameterSource params) {
+        StringBuilder sql = new StringBuilder("select app_id, uri_id, hits from (")
+                .append(aggregateSql)
+                .append(") p ");
+        if (Objects.nonNull(after)) {
+            params.addValue("afterHits", after.getHits());
+            params.addValue("afterAppId", after.getAppId());
+            params.addValue("afterUriId", after.getUriId());
+            sql.append("where hits < :afterHits or (hits = :afterHits and (app_id > :afterAppId " +
+                    "or (app_id = :afterAppId and uri_id > :afterUriId))) ");
+        }
+        sql.append("order by hits desc, app_id, uri_id");
+        if (Objects.nonNull(limit)) {
+            params.addValue("limit", limit);
+            sql.append(" limit :limit");
+        }
+        return sql.toString();
+    }
+}
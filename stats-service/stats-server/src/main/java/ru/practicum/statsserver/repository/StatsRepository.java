@@ -1,34 +1,7 @@
 package ru.practicum.statsserver.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import ru.practicum.statsdto.ViewStatsDto;
 import ru.practicum.statsserver.model.ItemStats;
 
-import java.time.LocalDateTime;
-import java.util.List;
-
-public interface StatsRepository extends JpaRepository<ItemStats, Long> {
-    @Query("select new ru.practicum.statsdto.ViewStatsDto(h.app, h.uri, count(h.ip)) " +
-            "from ItemStats h " +
-            "where h.requestDateTime between ?1 and ?2 " +
-            "group by h.app, h.uri " +
-            "order by count(h.ip) desc")
-    List<ViewStatsDto> findAllWithoutUris(LocalDateTime start, LocalDateTime end);
-
-    @Query("select new ru.practicum.statsdto.ViewStatsDto(h.app, h.uri, count(h.ip)) " +
-            "from ItemStats h " +
-            "where h.requestDateTime between ?1 and ?2 " +
-            "and h.uri in (?3) " +
-            "group by h.app, h.uri " +
-            "order by count(h.ip) desc")
-    List<ViewStatsDto> findAllNotUnique(LocalDateTime start, LocalDateTime end, List<String> uris);
-
-    @Query("select new ru.practicum.statsdto.ViewStatsDto(h.app, h.uri, count(distinct h.ip)) " +
-            "from ItemStats h " +
-            "where h.requestDateTime between ?1 and ?2 " +
-            "and h.uri in (?3) " +
-            "group by h.app, h.uri " +
-            "order by count(distinct h.ip) desc")
-    List<ViewStatsDto> findAllUnique(LocalDateTime start, LocalDateTime end, List<String> uris);
+public interface StatsRepository extends JpaRepository<ItemStats, Long>, StatsRepositoryCustom {
 }
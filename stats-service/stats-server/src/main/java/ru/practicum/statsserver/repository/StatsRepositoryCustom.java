@@ -0,0 +1,9 @@
+package ru.practicum.statsserver.repository;
+
+import ru.practicum.statsserver.model.ItemStats;
+
+import java.util.List;
+
+public interface StatsRepositoryCustom {
+    List<Integer> insertAll(List<ItemStats> items);
+}
@@ -0,0 +1,47 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.statsserver.metrics.StatsMetrics;
+import ru.practicum.statsserver.model.ItemStats;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class StatsRepositoryImpl implements StatsRepositoryCustom {
+    private static final String INSERT_SQL =
+            "insert into stats (app_id, uri_id, ip, ip_id, request_date_time) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StatsMetrics metrics;
+
+    @Value("${stats.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Override
+    public List<Integer> insertAll(List<ItemStats> items) {
+        int[][] results = metrics.timeInsert(items.size(), () ->
+                jdbcTemplate.batchUpdate(INSERT_SQL, items, batchSize, (ps, item) -> {
+                    ps.setInt(1, item.getAppId());
+                    ps.setInt(2, item.getUriId());
+                    ps.setBytes(3, item.getIp());
+                    ps.setObject(4, item.getIpId(), Types.INTEGER);
+                    ps.setTimestamp(5, Timestamp.valueOf(item.getRequestDateTime()));
+                }));
+
+        List<Integer> accepted = new ArrayList<>(results.length);
+        for (int[] batch : results) {
+            int count = 0;
+            for (int rows : batch) {
+                count += rows == Statement.SUCCESS_NO_INFO ? 1 : rows;
+            }
+            accepted.add(count);
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,189 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupKey;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Day bitmaps of ip ids and the deltas written next to them. Writers only insert deltas; the merge folds
+ * them into the day bitmaps and reads combine both. The calls that write and the backfill queries work
+ * on the shard selected by the caller, the reads go to every shard.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UniqueBitmapRepository {
+    private static final String INSERT_DELTA_SQL = "insert into stats_ip_bitmap_delta (app_id, uri_id, bucket, bitmap) " +
+            "values (:appId, :uriId, :bucket, :bitmap)";
+    private static final String CLAIM_DELTAS_SQL = "delete from stats_ip_bitmap_delta where id in (" +
+            "select id from stats_ip_bitmap_delta order by id limit :limit for update skip locked) " +
+            "returning app_id, uri_id, bucket, bitmap";
+    private static final String INSERT_SQL = "insert into stats_ip_bitmap_day (app_id, uri_id, bucket, bitmap) " +
+            "values (:appId, :uriId, :bucket, :bitmap) on conflict (uri_id, app_id, bucket) do nothing";
+    private static final String SELECT_FOR_UPDATE_SQL = "select bitmap from stats_ip_bitmap_day " +
+            "where app_id = :appId and uri_id = :uriId and bucket = :bucket for update";
+    private static final String UPDATE_SQL = "update stats_ip_bitmap_day set bitmap = :bitmap " +
+            "where app_id = :appId and uri_id = :uriId and bucket = :bucket";
+    private static final String FIND_VALID_FROM_SQL = "select valid_from from stats_unique_index where id = 1";
+    private static final String SAVE_VALID_FROM_SQL = "insert into stats_unique_index (id, valid_from) " +
+            "values (1, :validFrom) on conflict (id) do update set valid_from = excluded.valid_from";
+    private static final String DELETE_VALID_FROM_SQL = "delete from stats_unique_index where id = 1";
+    private static final String FIND_LATEST_UNINDEXED_SQL = "select max(request_date_time) from stats " +
+            "where request_date_time < :before and ip_id is null";
+    private static final String FIND_UNINDEXED_SQL = "select id, app_id, uri_id, ip, request_date_time from stats " +
+            "where request_date_time >= :from and request_date_time < :to and ip_id is null limit :limit";
+    private static final String UPDATE_IP_IDS_SQL = "update stats s set ip_id = u.ip_id " +
+            "from unnest(:ids, :ipIds) as u(id, ip_id) " +
+            "where s.id = u.id and s.request_date_time >= :from and s.request_date_time < :to";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ShardRouter router;
+
+    public void insertDeltas(Map<RollupKey, byte[]> bitmaps) {
+        jdbcTemplate.batchUpdate(INSERT_DELTA_SQL, bitmaps.entrySet().stream()
+                .map(entry -> keyParams(entry.getKey()).addValue("bitmap", entry.getValue()))
+                .toArray(SqlParameterSource[]::new));
+    }
+
+    /**
+     * Deletes up to the given number of the oldest deltas and hands them to the handler. Must run in
+     * the transaction that merges them; deltas claimed by a concurrent merge are skipped.
+     */
+    public void claimDeltas(int limit, RowCallbackHandler handler) {
+        jdbcTemplate.query(CLAIM_DELTAS_SQL, new MapSqlParameterSource("limit", limit), handler);
+    }
+
+    public boolean insertIfAbsent(RollupKey key, byte[] bitmap) {
+        return jdbcTemplate.update(INSERT_SQL, keyParams(key).addValue("bitmap", bitmap)) > 0;
+    }
+
+    public byte[] findForUpdate(RollupKey key) {
+        return jdbcTemplate.queryForObject(SELECT_FOR_UPDATE_SQL, keyParams(key), byte[].class);
+    }
+
+    public void update(RollupKey key, byte[] bitmap) {
+        jdbcTemplate.update(UPDATE_SQL, keyParams(key).addValue("bitmap", bitmap));
+    }
+
+    /**
+     * Keys of the day bitmaps and of the deltas not merged yet in [from, to), without reading the bitmaps.
+     */
+    public List<RollupKey> findKeys(LocalDateTime from, LocalDateTime to, UriFilter uriFilter) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String filter = "bucket >= :from and bucket < :to " + UriFilterSql.and(uriFilter, params);
+        String query = String.format("select app_id, uri_id, bucket from stats_ip_bitmap_day where %1$s " +
+                "union select app_id, uri_id, bucket from stats_ip_bitmap_delta where %1$s", filter);
+        return router.scatter(shard -> jdbcTemplate.query(query, params, (rs, rowNum) -> new RollupKey(
+                        rs.getInt("app_id"), rs.getInt("uri_id"), rs.getTimestamp("bucket").toLocalDateTime())))
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Day bitmaps and deltas of the given keys, a key may come in several rows. The keys are bound as three parallel arrays, so the statement has the
+     * same shape however many keys a query touches; the driver binds no timestamp arrays, so the buckets
+     * go as text.
+     */
+    public void findBitmaps(List<RollupKey> keys, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("uriIds", keys.stream().map(RollupKey::getUriId).toArray(Integer[]::new))
+                .addValue("appIds", keys.stream().map(RollupKey::getAppId).toArray(Integer[]::new))
+                .addValue("buckets", keys.stream().map(key -> key.getBucket().toString()).toArray(String[]::new));
+        queryAll("select b.app_id, b.uri_id, b.bucket, b.bitmap from (" +
+                "select app_id, uri_id, bucket, bitmap from stats_ip_bitmap_day union all " +
+                "select app_id, uri_id, bucket, bitmap from stats_ip_bitmap_delta) b " +
+                "join unnest(:uriIds, :appIds, cast(:buckets as timestamp[])) as k(uri_id, app_id, bucket) " +
+                "on b.uri_id = k.uri_id and b.app_id = k.app_id and b.bucket = k.bucket", params, handler);
+    }
+
+    public void findRawIpIds(LocalDateTime from, LocalDateTime to, UriFilter uriFilter, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        queryAll("select distinct app_id, uri_id, ip_id from stats " +
+                "where request_date_time >= :from and request_date_time < :to and ip_id is not null " +
+                UriFilterSql.and(uriFilter, params), params, handler);
+    }
+
+    public LocalDateTime findValidFrom() {
+        List<Timestamp> bounds = jdbcTemplate.queryForList(FIND_VALID_FROM_SQL, Map.of(), Timestamp.class);
+        return bounds.isEmpty() ? null : bounds.get(0).toLocalDateTime();
+    }
+
+    public void saveValidFrom(LocalDateTime validFrom) {
+        jdbcTemplate.update(SAVE_VALID_FROM_SQL, Map.of("validFrom", Timestamp.valueOf(validFrom)));
+    }
+
+    public void deleteValidFrom() {
+        jdbcTemplate.update(DELETE_VALID_FROM_SQL, Map.of());
+    }
+
+    /**
+     * The time of the latest raw hit without an ip id before the given one, or null when there is none.
+     */
+    public LocalDateTime findLatestUnindexed(LocalDateTime before) {
+        Timestamp latest = jdbcTemplate.queryForObject(FIND_LATEST_UNINDEXED_SQL,
+                Map.of("before", Timestamp.valueOf(before)), Timestamp.class);
+        return Objects.isNull(latest) ? null : latest.toLocalDateTime();
+    }
+
+    /**
+     * Up to the given number of raw hits of [from, to) without an ip id.
+     */
+    public List<ItemStats> findUnindexed(LocalDateTime from, LocalDateTime to, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("limit", limit);
+        return jdbcTemplate.query(FIND_UNINDEXED_SQL, params, (rs, rowNum) -> ItemStats.builder()
+                .id(rs.getLong("id"))
+                .appId(rs.getInt("app_id"))
+                .uriId(rs.getInt("uri_id"))
+                .ip(rs.getBytes("ip"))
+                .requestDateTime(rs.getTimestamp("request_date_time").toLocalDateTime())
+                .build());
+    }
+
+    /**
+     * Stores the ip ids of raw hits of [from, to); the range lets the update skip the other partitions.
+     */
+    public void updateIpIds(List<ItemStats> items, LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ids", items.stream().map(ItemStats::getId).toArray(Long[]::new))
+                .addValue("ipIds", items.stream().map(ItemStats::getIpId).toArray(Integer[]::new))
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        jdbcTemplate.update(UPDATE_IP_IDS_SQL, params);
+    }
+
+    private void queryAll(String sql, MapSqlParameterSource params, RowCallbackHandler handler) {
+        router.forEachShard(shard -> jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> {
+            synchronized (handler) {
+                handler.processRow(rs);
+            }
+        }));
+    }
+
+    private MapSqlParameterSource keyParams(RollupKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.getAppId())
+                .addValue("uriId", key.getUriId())
+                .addValue("bucket", Timestamp.valueOf(key.getBucket()));
+    }
+}
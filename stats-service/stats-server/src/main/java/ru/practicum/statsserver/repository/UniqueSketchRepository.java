@@ -0,0 +1,123 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupKey;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Day and hour sketches of unique ips. Writers only insert small day sketches as deltas, which the merge
+ * folds into the day sketches; reads of day sketches take both. The calls that write work on the shard
+ * selected by the caller, the reads go to every shard.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UniqueSketchRepository {
+    private static final String INSERT_DELTA_SQL = "insert into stats_hll_day_delta (app_id, uri_id, bucket, sketch) " +
+            "values (:appId, :uriId, :bucket, :sketch)";
+    private static final String CLAIM_DELTAS_SQL = "delete from stats_hll_day_delta where id in (" +
+            "select id from stats_hll_day_delta order by id limit :limit for update skip locked) " +
+            "returning app_id, uri_id, bucket, sketch";
+    private static final String INSERT_SQL = "insert into %s (app_id, uri_id, bucket, sketch) " +
+            "values (:appId, :uriId, :bucket, :sketch) on conflict (uri_id, app_id, bucket) do nothing";
+    private static final String SELECT_FOR_UPDATE_SQL = "select sketch from %s " +
+            "where app_id = :appId and uri_id = :uriId and bucket = :bucket for update";
+    private static final String UPDATE_SQL = "update %s set sketch = :sketch " +
+            "where app_id = :appId and uri_id = :uriId and bucket = :bucket";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ShardRouter router;
+
+    public void insertDeltas(Map<RollupKey, byte[]> sketches) {
+        jdbcTemplate.batchUpdate(INSERT_DELTA_SQL, sketches.entrySet().stream()
+                .map(entry -> keyParams(entry.getKey()).addValue("sketch", entry.getValue()))
+                .toArray(SqlParameterSource[]::new));
+    }
+
+    /**
+     * Deletes up to the given number of the oldest deltas and hands them to the handler. Must run in
+     * the transaction that merges them; deltas claimed by a concurrent merge are skipped.
+     */
+    public void claimDeltas(int limit, RowCallbackHandler handler) {
+        jdbcTemplate.query(CLAIM_DELTAS_SQL, new MapSqlParameterSource("limit", limit), handler);
+    }
+
+    public boolean insertIfAbsent(RollupGranularity granularity, RollupKey key, byte[] sketch) {
+        return jdbcTemplate.update(String.format(INSERT_SQL, sketchTable(granularity)),
+                keyParams(key).addValue("sketch", sketch)) > 0;
+    }
+
+    public byte[] findForUpdate(RollupGranularity granularity, RollupKey key) {
+        return jdbcTemplate.queryForObject(String.format(SELECT_FOR_UPDATE_SQL, sketchTable(granularity)),
+                keyParams(key), byte[].class);
+    }
+
+    public void update(RollupGranularity granularity, RollupKey key, byte[] sketch) {
+        jdbcTemplate.update(String.format(UPDATE_SQL, sketchTable(granularity)),
+                keyParams(key).addValue("sketch", sketch));
+    }
+
+    /**
+     * Sketches of [from, to); a key may come in several rows, the day sketch and its deltas not merged yet.
+     */
+    public void findSketches(RollupGranularity granularity, LocalDateTime from, LocalDateTime to,
+                             UriFilter uriFilter, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String select = "select app_id, uri_id, sketch from %s where bucket >= :from and bucket < :to " +
+                UriFilterSql.and(uriFilter, params);
+        String sql = String.format(select, sketchTable(granularity));
+        if (granularity == RollupGranularity.DAY) {
+            sql += " union all " + String.format(select, "stats_hll_day_delta");
+        }
+        queryAll(sql, params, handler);
+    }
+
+    public void findRawIps(LocalDateTime from, LocalDateTime to, UriFilter uriFilter, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        queryAll("select app_id, uri_id, ip from stats where request_date_time >= :from and request_date_time < :to " +
+                UriFilterSql.and(uriFilter, params), params, handler);
+    }
+
+    private void queryAll(String sql, MapSqlParameterSource params, RowCallbackHandler handler) {
+        router.forEachShard(shard -> jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> {
+            synchronized (handler) {
+                handler.processRow(rs);
+            }
+        }));
+    }
+
+    /**
+     * Day sketches are merged from the ingest deltas, hour sketches written only by the compaction of old raw hits.
+     */
+    private static String sketchTable(RollupGranularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return "stats_hll_hour";
+            case DAY:
+                return "stats_hll_day";
+            default:
+                throw new IllegalArgumentException("No unique sketches are kept per " + granularity.getTruncField());
+        }
+    }
+
+    private MapSqlParameterSource keyParams(RollupKey key) {
+        return new MapSqlParameterSource()
+                .addValue("appId", key.getAppId())
+                .addValue("uriId", key.getUriId())
+                .addValue("bucket", Timestamp.valueOf(key.getBucket()));
+    }
+}
@@ -0,0 +1,43 @@
+package ru.practicum.statsserver.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.model.UriPattern;
+
+import java.util.Objects;
+
+/**
+ * Renders a uri filter as a condition on uri_id. Patterns are joined with the uri dictionary in the same
+ * statement, one index range per pattern, so they are only passed where the dictionary lives next to the
+ * stats tables. Ids and patterns are bound as arrays, so the statement shape does not depend on their number.
+ */
+final class UriFilterSql {
+    private static final String PATTERN_SQL = "select u.id from unnest(:uriFrom, :uriTo, :uriLike) " +
+            "as p(from_value, to_value, like_value) join stats_uris u on u.value ~>=~ p.from_value " +
+            "and %s and u.value like p.like_value";
+    private static final String BOUNDED = "u.value ~<~ p.to_value";
+    private static final String UNBOUNDED = "(p.to_value is null or u.value ~<~ p.to_value)";
+
+    private UriFilterSql() {
+    }
+
+    /**
+     * Returns an "and ..." condition to append to a where clause, or an empty string for no filter.
+     */
+    static String and(UriFilter filter, MapSqlParameterSource params) {
+        if (Objects.isNull(filter)) {
+            return "";
+        }
+        params.addValue("uriIds", filter.getIds().toArray(Integer[]::new));
+        if (!filter.hasPatterns()) {
+            return "and uri_id = any(:uriIds) ";
+        }
+        params.addValue("uriFrom", filter.getPatterns().stream().map(UriPattern::getFrom).toArray(String[]::new));
+        params.addValue("uriTo", filter.getPatterns().stream().map(UriPattern::getTo).toArray(String[]::new));
+        params.addValue("uriLike", filter.getPatterns().stream().map(UriPattern::getLike).toArray(String[]::new));
+        // an upper bound that may be null is no index condition, so it is only used when some pattern needs it
+        boolean bounded = filter.getPatterns().stream().allMatch(pattern -> Objects.nonNull(pattern.getTo()));
+        return "and (uri_id = any(:uriIds) or uri_id in (" +
+                String.format(PATTERN_SQL, bounded ? BOUNDED : UNBOUNDED) + ")) ";
+    }
+}
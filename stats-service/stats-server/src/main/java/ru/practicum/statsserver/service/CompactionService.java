@@ -0,0 +1,186 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupKey;
+import ru.practicum.statsserver.repository.CompactionRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+import ru.practicum.statsserver.sketch.MurmurHash3;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compacts raw hits older than a threshold. Hit counts of old hours are already kept in the rollups,
+ * so only the unique ips are folded into hour sketches; then the watermark moves and exactly the raw rows
+ * that were folded are deleted in bounded batches. A row committed late with a lower id than the ones
+ * read is not among them and is left for the next run.
+ */
+@Slf4j
+@Service
+public class CompactionService {
+    private final CompactionRepository compactionRepository;
+    private final UniqueSketchService uniqueSketchService;
+    private final RollupService rollupService;
+    private final StatsResultCache resultCache;
+    private final CompactionWatermark watermark;
+    private final ShardRouter router;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final int olderThanDays;
+    private final int batchSize;
+    private final Timer runTimer;
+    private final Counter compactedRows;
+    private final Counter deletedRows;
+
+    public CompactionService(CompactionRepository compactionRepository,
+                             UniqueSketchService uniqueSketchService,
+                             RollupService rollupService,
+                             StatsResultCache resultCache,
+                             CompactionWatermark watermark,
+                             ShardRouter router,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${stats.compaction.enabled:false}") boolean enabled,
+                             @Value("${stats.compaction.older-than-days:30}") int olderThanDays,
+                             @Value("${stats.compaction.batch-size:10000}") int batchSize) {
+        this.compactionRepository = compactionRepository;
+        this.uniqueSketchService = uniqueSketchService;
+        this.rollupService = rollupService;
+        this.resultCache = resultCache;
+        this.watermark = watermark;
+        this.router = router;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.olderThanDays = olderThanDays;
+        this.batchSize = batchSize;
+
+        this.runTimer = Timer.builder("stats.compaction.run")
+                .register(meterRegistry);
+        this.compactedRows = Counter.builder("stats.compaction.rows")
+                .tag("stage", "compacted")
+                .register(meterRegistry);
+        this.deletedRows = Counter.builder("stats.compaction.rows")
+                .tag("stage", "deleted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Every shard commits its sketches before the reads switch to them, so the watermark is
+     * the lowest one saved by any shard.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadWatermark() {
+        List<LocalDateTime> watermarks = router.scatter(shard -> compactionRepository.findWatermark());
+        if (watermarks.stream().allMatch(Objects::nonNull)) {
+            watermarks.stream().min(LocalDateTime::compareTo).ifPresent(watermark::advance);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${stats.compaction.check-interval-ms:3600000}",
+            fixedDelayString = "${stats.compaction.check-interval-ms:3600000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        if (!rollupService.isEnabled()) {
+            log.warn("CompactionService: Rollups are disabled, raw hits are not compacted");
+            return;
+        }
+        LocalDateTime before = RollupGranularity.HOUR.floor(LocalDateTime.now().minusDays(olderThanDays));
+        runTimer.record(() -> compactBefore(before));
+    }
+
+    private void compactBefore(LocalDateTime before) {
+        Roaring64NavigableMap[] compactedIds = new Roaring64NavigableMap[router.getShardCount()];
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            int current = shard;
+            router.runOn(shard, () -> compactedIds[current] = compactShard(before));
+        }
+
+        watermark.advance(before);
+        resultCache.clear();
+
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            int current = shard;
+            router.runOn(shard, () -> deleteCompacted(before, compactedIds[current]));
+        }
+    }
+
+    /**
+     * Folds every raw hit before the given hour into the hour sketches, including late hits of hours
+     * compacted by an earlier run, and returns the ids of the hits folded.
+     */
+    private Roaring64NavigableMap compactShard(LocalDateTime before) {
+        Roaring64NavigableMap ids = new Roaring64NavigableMap();
+        LocalDateTime next = compactionRepository.findOldest(before);
+        while (Objects.nonNull(next)) {
+            LocalDateTime hour = RollupGranularity.HOUR.floor(next);
+            LocalDateTime hourEnd = hour.plusHours(1);
+            transaction.executeWithoutResult(status -> compactHour(hour, hourEnd, ids));
+            next = compactionRepository.findNext(hourEnd, before);
+        }
+        compactionRepository.saveWatermark(before);
+        return ids;
+    }
+
+    /**
+     * Rows come ordered by uri and app, so only the sketch of the current key is held in memory.
+     */
+    private void compactHour(LocalDateTime hour, LocalDateTime hourEnd, Roaring64NavigableMap ids) {
+        RollupKey[] key = new RollupKey[1];
+        HyperLogLog[] sketch = new HyperLogLog[1];
+        long[] rows = new long[1];
+        compactionRepository.findHits(hour, hourEnd, rs -> {
+            RollupKey rowKey = new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"), hour);
+            if (!rowKey.equals(key[0])) {
+                if (Objects.nonNull(key[0])) {
+                    uniqueSketchService.merge(RollupGranularity.HOUR, key[0], sketch[0]);
+                }
+                key[0] = rowKey;
+                sketch[0] = uniqueSketchService.newSketch();
+            }
+            sketch[0].add(MurmurHash3.hash64(rs.getBytes("ip")));
+            ids.addLong(rs.getLong("id"));
+            rows[0]++;
+        });
+        if (Objects.nonNull(key[0])) {
+            uniqueSketchService.merge(RollupGranularity.HOUR, key[0], sketch[0]);
+        }
+        compactedRows.increment(rows[0]);
+        log.debug("CompactionService: Compacted {} hits of [{}, {})", rows[0], hour, hourEnd);
+    }
+
+    private void deleteCompacted(LocalDateTime before, Roaring64NavigableMap ids) {
+        long deleted = 0;
+        LongIterator it = ids.getLongIterator();
+        List<Long> batch = new ArrayList<>(batchSize);
+        while (it.hasNext()) {
+            batch.add(it.next());
+            if (batch.size() == batchSize || !it.hasNext()) {
+                int rows = compactionRepository.deleteHits(batch.toArray(Long[]::new), before);
+                deleted += rows;
+                deletedRows.increment(rows);
+                batch.clear();
+            }
+        }
+        if (deleted > 0) {
+            log.info("CompactionService: Deleted {} raw hits before {}", deleted, before);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.statsserver.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The hour before which raw hits may already have been compacted away on every shard.
+ * Reads before it use the minute rollups for hits and the hour sketches for unique ips.
+ */
+@Component
+public class CompactionWatermark {
+    private final AtomicReference<LocalDateTime> value = new AtomicReference<>();
+
+    public LocalDateTime get() {
+        return value.get();
+    }
+
+    public boolean covers(LocalDateTime start) {
+        LocalDateTime watermark = value.get();
+        return Objects.nonNull(watermark) && start.isBefore(watermark);
+    }
+
+    void advance(LocalDateTime watermark) {
+        value.accumulateAndGet(watermark, (current, next) ->
+                Objects.isNull(current) || next.isAfter(current) ? next : current);
+    }
+}
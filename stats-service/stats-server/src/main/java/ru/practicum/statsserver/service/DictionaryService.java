@@ -0,0 +1,265 @@
+package ru.practicum.statsserver.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsdto.ViewStatsDto;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+import ru.practicum.statsserver.model.DictionaryType;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.model.UriPattern;
+import ru.practicum.statsserver.repository.DictionaryRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class DictionaryService {
+    private final DictionaryRepository dictionaryRepository;
+    private final ShardRouter router;
+
+    private final Map<DictionaryType, Map<String, Integer>> idCache = new EnumMap<>(Map.of(
+            DictionaryType.APP, new ConcurrentHashMap<>(),
+            DictionaryType.URI, new ConcurrentHashMap<>(),
+            DictionaryType.IP, new ConcurrentHashMap<>()));
+    private final Map<DictionaryType, Map<Integer, String>> valueCache = new EnumMap<>(Map.of(
+            DictionaryType.APP, new ConcurrentHashMap<>(),
+            DictionaryType.URI, new ConcurrentHashMap<>(),
+            DictionaryType.IP, new ConcurrentHashMap<>()));
+
+    /**
+     * Ips are far more numerous than apps and uris, so a dictionary cache that grows past this size is dropped.
+     */
+    @Value("${stats.dictionary.cache-size:1000000}")
+    private int cacheSize;
+
+    @Value("${stats.dictionary.pattern-cache-size:1000}")
+    private int patternCacheSize;
+
+    @Value("${stats.dictionary.pattern-max-uris:10000}")
+    private int patternMaxUris;
+
+    /**
+     * Uris created through another instance are not seen here, so a cached pattern is resolved again
+     * after this time.
+     */
+    @Value("${stats.dictionary.pattern-cache-ttl-seconds:60}")
+    private long patternCacheTtlSeconds;
+
+    private final Map<String, CachedPattern> patternCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long patternGeneration;
+
+    public void encode(List<ItemStats> items) {
+        Map<String, Integer> appIds = lookupIds(DictionaryType.APP, items.stream()
+                        .map(ItemStats::getApp)
+                        .collect(Collectors.toSet()),
+                missing -> dictionaryRepository.getOrCreateIds(DictionaryType.APP, missing));
+        Map<String, Integer> uriIds = lookupIds(DictionaryType.URI, items.stream()
+                        .map(ItemStats::getUri)
+                        .collect(Collectors.toSet()),
+                this::getOrCreateUriIds);
+
+        for (ItemStats item : items) {
+            item.setAppId(appIds.get(item.getApp()));
+            item.setUriId(uriIds.get(item.getUri()));
+        }
+    }
+
+    /**
+     * Cached patterns that match one of the uris created here are resolved again.
+     */
+    private Map<String, Integer> getOrCreateUriIds(Set<String> uris) {
+        Map<String, Integer> created = dictionaryRepository.createIds(DictionaryType.URI, uris);
+        Map<String, Integer> ids = new HashMap<>(created);
+        if (created.size() < uris.size()) {
+            ids.putAll(dictionaryRepository.findIds(DictionaryType.URI, uris.stream()
+                    .filter(uri -> !created.containsKey(uri))
+                    .collect(Collectors.toList())));
+        }
+        if (!created.isEmpty()) {
+            synchronized (patternCache) {
+                patternCache.values().removeIf(cached -> created.keySet().stream()
+                        .anyMatch(cached.getPattern()::matches));
+                patternGeneration++;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Gives every hit the dense id of its ip, which the exact unique index is built from.
+     */
+    public void encodeIps(List<ItemStats> items) {
+        List<String> ips = items.stream()
+                .map(item -> StatsMapper.formatIp(item.getIp()))
+                .collect(Collectors.toList());
+        Map<String, Integer> ipIds = lookupIds(DictionaryType.IP, new HashSet<>(ips),
+                missing -> dictionaryRepository.getOrCreateIds(DictionaryType.IP, missing));
+
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setIpId(ipIds.get(ips.get(i)));
+        }
+    }
+
+    /**
+     * Returns null when no uri filter is requested. A uri holding a '*' matches every known uri the wildcard
+     * fits, e.g. /events/*. With a single database the patterns are matched inside the stats queries; when
+     * sharded the dictionary lives apart from the stats, so each pattern is resolved to ids once and cached.
+     */
+    public UriFilter findUriFilter(List<String> uris) {
+        if (Objects.isNull(uris) || uris.isEmpty()) {
+            return null;
+        }
+        List<Integer> ids = new ArrayList<>(findIds(DictionaryType.URI, uris.stream()
+                .filter(uri -> !UriPattern.isPattern(uri))
+                .collect(Collectors.toList())).values());
+        List<UriPattern> patterns = uris.stream()
+                .filter(UriPattern::isPattern)
+                .distinct()
+                .map(UriPattern::of)
+                .collect(Collectors.toList());
+        if (patterns.isEmpty() || router.getShardCount() == 1) {
+            return new UriFilter(ids, patterns);
+        }
+
+        Set<Integer> matched = new HashSet<>(ids);
+        patterns.forEach(pattern -> matched.addAll(findPatternIds(pattern)));
+        return new UriFilter(new ArrayList<>(matched), List.of());
+    }
+
+    private List<Integer> findPatternIds(UriPattern pattern) {
+        long loadGeneration;
+        synchronized (patternCache) {
+            CachedPattern cached = patternCache.get(pattern.getPattern());
+            if (Objects.nonNull(cached) && cached.getLoadedAt()
+                    .isAfter(LocalDateTime.now().minusSeconds(patternCacheTtlSeconds))) {
+                return cached.getIds();
+            }
+            loadGeneration = patternGeneration;
+        }
+        LocalDateTime loadedAt = LocalDateTime.now();
+        List<Integer> ids = dictionaryRepository.findIdsMatching(DictionaryType.URI, pattern, patternMaxUris + 1);
+        if (ids.size() > patternMaxUris) {
+            throw new NoValidParameterRequest(String.format("Pattern '%s' matches more than %d uris!",
+                    pattern.getPattern(), patternMaxUris));
+        }
+        synchronized (patternCache) {
+            // a uri created while loading may be missing from the ids, so they are not kept
+            if (loadGeneration != patternGeneration) {
+                return ids;
+            }
+            patternCache.put(pattern.getPattern(), new CachedPattern(pattern, ids, loadedAt));
+            if (patternCache.size() > patternCacheSize) {
+                patternCache.remove(patternCache.keySet().iterator().next());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Ids of the values seen so far; values never seen are left out.
+     */
+    public Map<String, Integer> findIds(DictionaryType type, Collection<String> values) {
+        return lookupIds(type, new HashSet<>(values), missing -> dictionaryRepository.findIds(type, missing));
+    }
+
+    public List<ViewStatsDto> toDtos(List<StatsCount> counts) {
+        Map<Integer, String> apps = lookupValues(DictionaryType.APP, counts.stream()
+                .map(StatsCount::getAppId)
+                .collect(Collectors.toSet()));
+        Map<Integer, String> uris = lookupValues(DictionaryType.URI, counts.stream()
+                .map(StatsCount::getUriId)
+                .collect(Collectors.toSet()));
+
+        return counts.stream()
+                .map(count -> new ViewStatsDto(apps.get(count.getAppId()), uris.get(count.getUriId()), count.getHits()))
+                .collect(Collectors.toList());
+    }
+
+    public ViewStatsDto toDto(StatsCount count) {
+        return new ViewStatsDto(lookupValue(DictionaryType.APP, count.getAppId()),
+                lookupValue(DictionaryType.URI, count.getUriId()),
+                count.getHits());
+    }
+
+    private String lookupValue(DictionaryType type, Integer id) {
+        String value = valueCache.get(type).get(id);
+        return Objects.isNull(value) ? lookupValues(type, Set.of(id)).get(id) : value;
+    }
+
+    private Map<String, Integer> lookupIds(DictionaryType type, Set<String> values,
+                                           Function<Set<String>, Map<String, Integer>> loader) {
+        Map<String, Integer> cache = idCache.get(type);
+        Map<String, Integer> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String value : values) {
+            Integer id = cache.get(value);
+            if (id == null) {
+                missing.add(value);
+            } else {
+                result.put(value, id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Integer> loaded = loader.apply(missing);
+            loaded.forEach((value, id) -> remember(type, id, value));
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    public Map<Integer, String> lookupValues(DictionaryType type, Collection<Integer> ids) {
+        Map<Integer, String> cache = valueCache.get(type);
+        Map<Integer, String> result = new HashMap<>();
+        Set<Integer> missing = new HashSet<>();
+        for (Integer id : ids) {
+            String value = cache.get(id);
+            if (value == null) {
+                missing.add(id);
+            } else {
+                result.put(id, value);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Integer, String> loaded = dictionaryRepository.findValues(type, missing);
+            loaded.forEach((id, value) -> remember(type, id, value));
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    private void remember(DictionaryType type, Integer id, String value) {
+        if (idCache.get(type).size() >= cacheSize) {
+            idCache.get(type).clear();
+            valueCache.get(type).clear();
+        }
+        idCache.get(type).put(value, id);
+        valueCache.get(type).put(id, value);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class CachedPattern {
+        private final UriPattern pattern;
+        private final List<Integer> ids;
+        private final LocalDateTime loadedAt;
+    }
+}
@@ -0,0 +1,230 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.exception.IngestBufferFullException;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.wal.HitLog;
+import ru.practicum.statsserver.wal.HitLogPosition;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class HitBuffer {
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final HitWriter writer;
+    private final HitLog hitLog;
+    private final boolean enabled;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<BufferedHit> queue;
+    private final Timer flushTimer;
+    private final Counter overflowCounter;
+    private final Counter flushErrorCounter;
+    private final Counter flushRetryCounter;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public HitBuffer(HitWriter writer,
+                     HitLog hitLog,
+                     MeterRegistry meterRegistry,
+                     @Value("${stats.ingest.mode:sync}") String mode,
+                     @Value("${stats.ingest.buffer.capacity:100000}") int capacity,
+                     @Value("${stats.ingest.buffer.flush-size:1000}") int flushSize,
+                     @Value("${stats.ingest.buffer.flush-interval-ms:1000}") long flushIntervalMs) {
+        this.writer = writer;
+        this.hitLog = hitLog;
+        this.enabled = "async".equalsIgnoreCase(mode);
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        Gauge.builder("stats.ingest.buffer.depth", queue, BlockingQueue::size)
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.ingest.buffer.flush")
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("stats.ingest.buffer.dropped")
+                .tag("reason", "overflow")
+                .register(meterRegistry);
+        this.flushErrorCounter = Counter.builder("stats.ingest.buffer.dropped")
+                .tag("reason", "flush_error")
+                .register(meterRegistry);
+        this.flushRetryCounter = Counter.builder("stats.ingest.buffer.flush.retries")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The capacity check and the enqueue happen under one lock, so a batch is either queued whole or
+     * rejected whole and a retried batch is never written twice. With the hit log enabled the append
+     * happens under the same lock, so the queue order matches the log order and a flushed position
+     * never skips unflushed hits.
+     */
+    public synchronized void offer(List<ItemStats> items) {
+        checkCapacity(items.size());
+        enqueue(items, hitLog.isEnabled() ? hitLog.append(items) : null);
+    }
+
+    private void checkCapacity(int size) {
+        if (queue.remainingCapacity() < size) {
+            overflowCounter.increment(size);
+            throw new IngestBufferFullException("Hit buffer is full, try again later");
+        }
+    }
+
+    private void enqueue(List<ItemStats> items, HitLogPosition position) {
+        for (int i = 0; i < items.size(); i++) {
+            HitLogPosition itemPosition = i == items.size() - 1 ? position : null;
+            if (!queue.offer(new BufferedHit(items.get(i), itemPosition))) {
+                overflowCounter.increment(items.size() - i);
+                throw new IngestBufferFullException("Hit buffer is full, try again later");
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (hitLog.isEnabled()) {
+            hitLog.replay(items -> writer.write(null, items), flushSize);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "hit-buffer-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("HitBuffer: write-behind ingestion started, capacity={}, flushSize={}, flushInterval={}ms",
+                queue.remainingCapacity(), flushSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        flusher.join();
+    }
+
+    private void flushLoop() {
+        List<BufferedHit> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                if (!flush(batch)) {
+                    log.warn("HitBuffer: stopped with {} hits unflushed, they are replayed from the hit log",
+                            batch.size() + queue.size());
+                    return;
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<BufferedHit> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= flushSize || remaining <= 0 || !running) {
+                return;
+            }
+            BufferedHit item = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (item != null) {
+                batch.add(item);
+            }
+        }
+    }
+
+    /**
+     * Without the hit log a batch that fails to write is dropped. With it the batch is retried with
+     * growing delays until it is written, so the applied position never moves past hits that are not
+     * in the database; when the buffer is stopped first, false is returned and the hits stay in the log.
+     * Every attempt carries the same batch key, so the shards that committed their part before a failure
+     * skip it on the retry.
+     */
+    private boolean flush(List<BufferedHit> batch) {
+        List<ItemStats> items = new ArrayList<>(batch.size());
+        HitLogPosition position = null;
+        for (BufferedHit hit : batch) {
+            items.add(hit.item);
+            if (hit.position != null) {
+                position = hit.position;
+            }
+        }
+
+        String batchKey = hitLog.isEnabled() ? UUID.randomUUID().toString() : null;
+        long delayMs = Math.max(1, flushIntervalMs);
+        while (true) {
+            try {
+                flushTimer.record(() -> writer.write(batchKey, items));
+                if (position != null) {
+                    hitLog.markApplied(position);
+                }
+                return true;
+            } catch (RuntimeException e) {
+                if (!hitLog.isEnabled()) {
+                    flushErrorCounter.increment(items.size());
+                    log.error("HitBuffer: failed to flush {} hits", items.size(), e);
+                    return true;
+                }
+                flushRetryCounter.increment();
+                log.error("HitBuffer: failed to flush {} hits, retrying in {}ms", items.size(), delayMs, e);
+            }
+            if (!running || !sleep(delayMs)) {
+                return false;
+            }
+            delayMs = Math.min(delayMs * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    /**
+     * Sleeps in short steps so that a stop does not wait out a long retry delay.
+     */
+    private boolean sleep(long delayMs) {
+        long deadline = System.currentTimeMillis() + delayMs;
+        try {
+            for (long left = delayMs; left > 0 && running; left = deadline - System.currentTimeMillis()) {
+                Thread.sleep(Math.min(left, 100));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+        return running;
+    }
+
+    private static class BufferedHit {
+        private final ItemStats item;
+        private final HitLogPosition position;
+
+        BufferedHit(ItemStats item, HitLogPosition position) {
+            this.item = item;
+            this.position = position;
+        }
+    }
+}
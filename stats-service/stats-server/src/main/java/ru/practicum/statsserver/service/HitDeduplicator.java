@@ -0,0 +1,155 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.sketch.BloomFilter;
+import ru.practicum.statsserver.sketch.MurmurHash3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Drops repeated hits of one ip on one uri within a time window before they are written.
+ * Request times are cut into fixed windows and every (app, uri, ip, window) key is remembered in a Bloom filter;
+ * the filters of the current and the previous window are kept and rotated as hits of a newer window arrive.
+ * Hits older than the previous window, or later than the window after the server's current one, are passed
+ * through, so a far-future request time cannot rotate the filters ahead. Hits are checked first and only
+ * recorded once they were accepted, so a rejected batch can be retried; two concurrent batches carrying
+ * the same hit may both pass. A false positive drops a hit that was not a duplicate, at most at the
+ * configured rate.
+ */
+@Slf4j
+@Service
+public class HitDeduplicator {
+    private final boolean enabled;
+    private final long windowSeconds;
+    private final long expectedHits;
+    private final double falsePositiveRate;
+    private final Counter suppressedCounter;
+
+    private BloomFilter current;
+    private BloomFilter previous;
+    private long currentWindow = Long.MIN_VALUE;
+
+    public HitDeduplicator(MeterRegistry meterRegistry,
+                           @Value("${stats.dedup.enabled:false}") boolean enabled,
+                           @Value("${stats.dedup.window-seconds:10}") long windowSeconds,
+                           @Value("${stats.dedup.expected-hits:1000000}") long expectedHits,
+                           @Value("${stats.dedup.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.enabled = enabled;
+        this.windowSeconds = windowSeconds;
+        this.expectedHits = expectedHits;
+        this.falsePositiveRate = falsePositiveRate;
+
+        this.suppressedCounter = Counter.builder("stats.dedup.suppressed")
+                .description("Hits dropped as duplicates within the de-duplication window")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("HitDeduplicator: dropping repeated hits within {}s windows, {} bytes per filter",
+                    windowSeconds, new BloomFilter(expectedHits, falsePositiveRate).sizeInBytes());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the hits that are neither recorded yet nor repeated earlier in the batch, in their original order.
+     * Nothing is recorded; call {@link #record} once the returned hits were accepted.
+     */
+    public List<ItemStats> filter(List<ItemStats> items) {
+        if (!enabled) {
+            return items;
+        }
+        List<ItemStats> kept = new ArrayList<>(items.size());
+        Set<Long> batch = new HashSet<>();
+        long maxWindow = currentServerWindow() + 1;
+        synchronized (this) {
+            for (ItemStats item : items) {
+                long window = window(item);
+                if (window > maxWindow) {
+                    kept.add(item);
+                    continue;
+                }
+                if (window > currentWindow) {
+                    rotate(window);
+                }
+                long hash = MurmurHash3.hash64(key(item, window));
+                BloomFilter filter = filterOf(window);
+                if (Objects.isNull(filter) || !filter.mightContain(hash) && batch.add(hash)) {
+                    kept.add(item);
+                }
+            }
+        }
+        if (kept.size() < items.size()) {
+            suppressedCounter.increment(items.size() - kept.size());
+        }
+        return kept;
+    }
+
+    /**
+     * Remembers accepted hits, so later copies within their window are dropped.
+     */
+    public void record(List<ItemStats> items) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            for (ItemStats item : items) {
+                long window = window(item);
+                BloomFilter filter = filterOf(window);
+                if (Objects.nonNull(filter)) {
+                    filter.put(MurmurHash3.hash64(key(item, window)));
+                }
+            }
+        }
+    }
+
+    private BloomFilter filterOf(long window) {
+        if (window == currentWindow) {
+            return current;
+        }
+        if (window == currentWindow - 1) {
+            return previous;
+        }
+        return null;
+    }
+
+    private long window(ItemStats item) {
+        return Math.floorDiv(item.getRequestDateTime().toEpochSecond(ZoneOffset.UTC), windowSeconds);
+    }
+
+    private long currentServerWindow() {
+        return Math.floorDiv(LocalDateTime.now().toEpochSecond(ZoneOffset.UTC), windowSeconds);
+    }
+
+    private void rotate(long window) {
+        previous = window == currentWindow + 1 ? current : new BloomFilter(expectedHits, falsePositiveRate);
+        current = new BloomFilter(expectedHits, falsePositiveRate);
+        currentWindow = window;
+    }
+
+    private static byte[] key(ItemStats item, long window) {
+        byte[] app = item.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = item.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = item.getIp();
+        return ByteBuffer.allocate(4 + app.length + 4 + uri.length + ip.length + 8)
+                .putInt(app.length).put(app)
+                .putInt(uri.length).put(uri)
+                .put(ip)
+                .putLong(window)
+                .array();
+    }
+}
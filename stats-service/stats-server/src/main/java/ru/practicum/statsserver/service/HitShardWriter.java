@@ -0,0 +1,58 @@
+package ru.practicum.statsserver.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.repository.IngestBatchRepository;
+import ru.practicum.statsserver.repository.StatsRepository;
+
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes hits that all belong to the shard selected for the current thread.
+ * The hits must already carry their dictionary ids. A batch written with a key is recorded in the same
+ * transaction, and writing it again with that key changes nothing and returns the hits written the first time.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitShardWriter {
+    private final StatsRepository repository;
+    private final IngestBatchRepository batchRepository;
+    private final RollupService rollupService;
+    private final UniqueSketchService uniqueSketchService;
+    private final UniqueBitmapService uniqueBitmapService;
+    private final HotStatsService hotStatsService;
+    private final TrendingService trendingService;
+    private final StatsResultCache resultCache;
+
+    @Transactional
+    public List<Integer> write(String batchKey, List<ItemStats> items) {
+        if (Objects.nonNull(batchKey) && !batchRepository.insertIfAbsent(batchKey, items.size())) {
+            return List.of(batchRepository.findHits(batchKey));
+        }
+        List<Integer> batches = repository.insertAll(items);
+        if (rollupService.isEnabled()) {
+            rollupService.apply(items);
+        }
+        if (uniqueSketchService.isEnabled()) {
+            uniqueSketchService.apply(items);
+        }
+        if (uniqueBitmapService.isEnabled()) {
+            uniqueBitmapService.apply(items);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                hotStatsService.record(items);
+                trendingService.record(items);
+                resultCache.invalidate(items);
+                uniqueBitmapService.invalidate(items);
+            }
+        });
+        return batches;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.statsserver.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.metrics.StatsMetrics;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.repository.IngestBatchRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitWriter {
+    private final HitShardWriter shardWriter;
+    private final IngestBatchRepository batchRepository;
+    private final DictionaryService dictionaryService;
+    private final UniqueBitmapService uniqueBitmapService;
+    private final StatsMetrics metrics;
+    private final ShardRouter router;
+
+    @Value("${stats.ingest.batch-key-ttl-hours:24}")
+    private long batchKeyTtlHours;
+
+    /**
+     * Splits the hits by the shard of their uri and writes every part in its own transaction,
+     * in parallel. A failing shard does not roll back the parts already committed on the others, so a batch
+     * that may be written again, by a retry or a client resending it, carries a key: every shard records it
+     * with its part and skips a part it has already applied, and only the failed parts are written again.
+     * Keys are kept for the configured time; a null key writes the batch unconditionally.
+     * Dictionary ids are resolved first, outside of any transaction: creating them inside one would hold
+     * a second pooled connection per writer and starve the pool under concurrent load.
+     */
+    public List<Integer> write(String batchKey, List<ItemStats> items) {
+        return metrics.timeWrite(() -> encodeAndWrite(batchKey, items));
+    }
+
+    @Scheduled(fixedDelayString = "${stats.ingest.batch-key-prune-interval-ms:3600000}")
+    public void pruneBatchKeys() {
+        LocalDateTime before = LocalDateTime.now().minusHours(batchKeyTtlHours);
+        int pruned = router.scatter(shard -> batchRepository.deleteBefore(before)).stream()
+                .mapToInt(Integer::intValue)
+                .sum();
+        if (pruned > 0) {
+            log.info("HitWriter: pruned {} batch keys older than {}", pruned, before);
+        }
+    }
+
+    private List<Integer> encodeAndWrite(String batchKey, List<ItemStats> items) {
+        dictionaryService.encode(items);
+        if (uniqueBitmapService.isEnabled()) {
+            dictionaryService.encodeIps(items);
+        }
+        if (router.getShardCount() == 1) {
+            return shardWriter.write(batchKey, items);
+        }
+
+        Map<Integer, List<ItemStats>> byShard = items.stream()
+                .collect(Collectors.groupingBy(item -> router.shardOf(item.getUri())));
+        List<Integer> batches = new ArrayList<>();
+        router.scatter(shard -> byShard.containsKey(shard) ? shardWriter.write(batchKey, byShard.get(shard)) : List.<Integer>of())
+                .forEach(batches::addAll);
+        return batches;
+    }
+}
@@ -0,0 +1,132 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupSegment;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsKey;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.repository.StatsQueryRepository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exact per-minute hit counters for the most recent minutes, kept in memory so that
+ * top-N queries over a hot window do not have to group the stats tables.
+ * Only hits committed by this instance after startup are counted, so the window is served only when
+ * the instance is configured to own all ingest, i.e. it is the only stats-server writing the store;
+ * otherwise the top-N queries go to the rollups with the limit pushed down.
+ */
+@Slf4j
+@Service
+public class HotStatsService {
+    private final StatsQueryRepository queryRepository;
+    private final int windowMinutes;
+    private final boolean ownsIngest;
+    private final LocalDateTime trackedFrom;
+    private final ConcurrentSkipListMap<Long, Map<StatsKey, LongAdder>> minutes = new ConcurrentSkipListMap<>();
+
+    public HotStatsService(StatsQueryRepository queryRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.top.hot-window-minutes:60}") int windowMinutes,
+                           @Value("${stats.top.hot-window.owns-ingest:false}") boolean ownsIngest) {
+        this.queryRepository = queryRepository;
+        this.windowMinutes = windowMinutes;
+        this.ownsIngest = ownsIngest;
+        this.trackedFrom = RollupGranularity.MINUTE.ceil(LocalDateTime.now());
+
+        meterRegistry.gauge("stats.top.hot.buckets", minutes, Map::size);
+    }
+
+    public boolean isEnabled() {
+        return windowMinutes > 0 && ownsIngest;
+    }
+
+    public void record(List<ItemStats> items) {
+        if (!isEnabled()) {
+            return;
+        }
+        long oldest = toEpochMinute(LocalDateTime.now()) - windowMinutes;
+        for (ItemStats item : items) {
+            long minute = toEpochMinute(item.getRequestDateTime());
+            if (minute >= oldest) {
+                minutes.computeIfAbsent(minute, key -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(new StatsKey(item.getAppId(), item.getUriId()), key -> new LongAdder())
+                        .increment();
+            }
+        }
+        minutes.headMap(oldest).clear();
+    }
+
+    public boolean covers(LocalDateTime start) {
+        LocalDateTime windowStart = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(windowMinutes);
+        return isEnabled() && !start.isBefore(trackedFrom) && !start.isBefore(windowStart);
+    }
+
+    /**
+     * Whole minutes of [start, end] are read from memory, the partial minutes at the edges from raw rows.
+     * The counters are filtered by id, so the uri filter must not hold patterns.
+     */
+    public List<StatsCount> getTop(LocalDateTime start, LocalDateTime end, UriFilter uriFilter, int limit) {
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        LocalDateTime minuteFrom = RollupGranularity.MINUTE.ceil(start);
+        LocalDateTime minuteTo = RollupGranularity.MINUTE.floor(to);
+        Set<Integer> uriIds = Objects.isNull(uriFilter) ? null : new HashSet<>(uriFilter.getIds());
+        Map<StatsKey, Long> hits = new HashMap<>();
+
+        List<RollupSegment> edges = new ArrayList<>();
+        if (minuteFrom.isBefore(minuteTo)) {
+            minutes.subMap(toEpochMinute(minuteFrom), toEpochMinute(minuteTo)).values()
+                    .forEach(counters -> counters.forEach((key, counter) -> {
+                        if (Objects.isNull(uriIds) || uriIds.contains(key.getUriId())) {
+                            hits.merge(key, counter.sum(), Long::sum);
+                        }
+                    }));
+            if (start.isBefore(minuteFrom)) {
+                edges.add(new RollupSegment(null, start, minuteFrom));
+            }
+            if (minuteTo.isBefore(to)) {
+                edges.add(new RollupSegment(null, minuteTo, to));
+            }
+        } else {
+            edges.add(new RollupSegment(null, start, to));
+        }
+        if (!edges.isEmpty()) {
+            queryRepository.findHits(edges, uriFilter, null, null).forEach(count ->
+                    hits.merge(new StatsKey(count.getAppId(), count.getUriId()), count.getHits(), Long::sum));
+        }
+
+        PriorityQueue<StatsCount> top = new PriorityQueue<>(limit + 1, StatsCount.BY_HITS_DESC.reversed());
+        hits.forEach((key, count) -> {
+            top.add(new StatsCount(key.getAppId(), key.getUriId(), count));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+
+        List<StatsCount> result = new ArrayList<>(top);
+        result.sort(StatsCount.BY_HITS_DESC);
+        return result;
+    }
+
+    private long toEpochMinute(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+}
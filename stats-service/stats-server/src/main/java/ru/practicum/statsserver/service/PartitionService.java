@@ -0,0 +1,134 @@
+package ru.practicum.statsserver.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsserver.model.PartitionInterval;
+import ru.practicum.statsserver.repository.PartitionRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the partitions of the stats table ahead of the current time and retires those past the retention.
+ * The aggregates derived from the raw hits are retired with the same cutoff, so that every query path gives
+ * the same answer for a range, and so are the rows of the default partition, which no partition drop covers.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PartitionService {
+    private static final String PARTITION_PREFIX = "stats_p";
+    private static final String DEFAULT_PARTITION = "stats_default";
+    private static final List<String> BUCKET_TABLES = List.of(
+            "stats_rollup_minute", "stats_rollup_hour", "stats_rollup_day",
+            "stats_hll_day", "stats_hll_day_delta", "stats_hll_hour",
+            "stats_ip_bitmap_day", "stats_ip_bitmap_delta");
+
+    private final PartitionRepository partitionRepository;
+    private final StatsResultCache resultCache;
+    private final ShardRouter router;
+
+    @Value("${stats.partition.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.partition.interval:DAY}")
+    private PartitionInterval interval;
+
+    @Value("${stats.partition.premake:7}")
+    private int premake;
+
+    @Value("${stats.partition.retention:0}")
+    private int retention;
+
+    @Value("${stats.partition.retention-batch-size:10000}")
+    private int retentionBatchSize;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${stats.partition.check-interval-ms:3600000}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            router.runOn(shard, this::maintainShardPartitions);
+        }
+    }
+
+    private void maintainShardPartitions() {
+        LocalDate current = interval.floor(LocalDate.now());
+        Set<String> existing = new HashSet<>(partitionRepository.findPartitionNames());
+
+        LocalDate from = current;
+        for (int i = 0; i <= premake; i++) {
+            LocalDate to = interval.next(from);
+            String name = partitionName(from);
+            if (!existing.contains(name)) {
+                partitionRepository.createPartition(name, from, to);
+                log.info("PartitionService: Created partition '{}' for [{}, {})", name, from, to);
+            }
+            from = to;
+        }
+
+        if (retention > 0) {
+            LocalDate keepFrom = current.minus(retention, interval.getUnit());
+            dropExpiredPartitions(existing, keepFrom);
+            deleteExpiredRows(keepFrom);
+        }
+    }
+
+    private void dropExpiredPartitions(Set<String> partitions, LocalDate keepFrom) {
+        for (String name : partitions) {
+            LocalDate partitionStart = parsePartitionStart(name);
+            if (partitionStart != null && !interval.next(partitionStart).isAfter(keepFrom)) {
+                partitionRepository.dropPartition(name);
+                log.info("PartitionService: Dropped expired partition '{}'", name);
+                resultCache.clear();
+            }
+        }
+    }
+
+    private void deleteExpiredRows(LocalDate keepFrom) {
+        long rows = deleteBefore(DEFAULT_PARTITION, "request_date_time", keepFrom);
+        for (String table : BUCKET_TABLES) {
+            rows += deleteBefore(table, "bucket", keepFrom);
+        }
+        if (rows > 0) {
+            log.info("PartitionService: Deleted {} expired rows before {}", rows, keepFrom);
+            resultCache.clear();
+        }
+    }
+
+    private long deleteBefore(String table, String column, LocalDate keepFrom) {
+        long rows = 0;
+        int deleted;
+        do {
+            deleted = partitionRepository.deleteBefore(table, column, keepFrom, retentionBatchSize);
+            rows += deleted;
+        } while (deleted == retentionBatchSize);
+        return rows;
+    }
+
+    private String partitionName(LocalDate from) {
+        return PARTITION_PREFIX + from.format(interval.getSuffixFormatter());
+    }
+
+    private LocalDate parsePartitionStart(String name) {
+        if (!name.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        String suffix = name.substring(PARTITION_PREFIX.length());
+        try {
+            return interval == PartitionInterval.MONTH
+                    ? LocalDate.parse(suffix + "01", PartitionInterval.DAY.getSuffixFormatter())
+                    : LocalDate.parse(suffix, interval.getSuffixFormatter());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
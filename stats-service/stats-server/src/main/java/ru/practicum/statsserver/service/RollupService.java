@@ -0,0 +1,117 @@
+package ru.practicum.statsserver.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupKey;
+import ru.practicum.statsserver.model.RollupSegment;
+import ru.practicum.statsserver.repository.RollupRepository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+@Service
+@RequiredArgsConstructor
+public class RollupService {
+    private final RollupRepository rollupRepository;
+    private final CompactionWatermark watermark;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void apply(List<ItemStats> items) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            // sorted keys keep the row lock order stable between concurrent upserts
+            Map<RollupKey, Long> hits = new TreeMap<>();
+            for (ItemStats item : items) {
+                RollupKey key = new RollupKey(item.getAppId(), item.getUriId(),
+                        granularity.floor(item.getRequestDateTime()));
+                hits.merge(key, 1L, Long::sum);
+            }
+            rollupRepository.addHits(granularity, hits);
+        }
+    }
+
+    /**
+     * Splits the inclusive range [start, end] into the coarsest aligned buckets available,
+     * leaving raw rows only for the partial minutes at both edges.
+     */
+    public List<RollupSegment> plan(LocalDateTime start, LocalDateTime end) {
+        return planRange(start, end.plus(1, ChronoUnit.MICROS));
+    }
+
+    /**
+     * Same as {@link #plan} for the half-open range [from, to).
+     */
+    public List<RollupSegment> planRange(LocalDateTime from, LocalDateTime to) {
+        return planRange(from, to, RollupGranularity.DAY);
+    }
+
+    /**
+     * Plans the half-open range [from, to) without using rollups coarser than the given granularity.
+     * Raw edges before the compaction watermark are widened to the minutes they touch.
+     */
+    public List<RollupSegment> planRange(LocalDateTime from, LocalDateTime to, RollupGranularity coarsest) {
+        List<RollupSegment> segments = new ArrayList<>();
+        if (!enabled) {
+            segments.add(new RollupSegment(null, from, to));
+            return segments;
+        }
+
+        RollupGranularity current = null;
+        for (RollupGranularity next : RollupGranularity.values()) {
+            if (next.compareTo(coarsest) > 0) {
+                break;
+            }
+            LocalDateTime alignedFrom = next.ceil(from);
+            LocalDateTime alignedTo = next.floor(to);
+            if (!alignedFrom.isBefore(alignedTo)) {
+                break;
+            }
+            if (from.isBefore(alignedFrom)) {
+                segments.add(new RollupSegment(current, from, alignedFrom));
+            }
+            if (alignedTo.isBefore(to)) {
+                segments.add(new RollupSegment(current, alignedTo, to));
+            }
+            from = alignedFrom;
+            to = alignedTo;
+            current = next;
+        }
+        segments.add(new RollupSegment(current, from, to));
+
+        return replaceCompacted(segments);
+    }
+
+    private List<RollupSegment> replaceCompacted(List<RollupSegment> segments) {
+        LocalDateTime compactedBefore = watermark.get();
+        if (Objects.isNull(compactedBefore)) {
+            return segments;
+        }
+        List<RollupSegment> replaced = new ArrayList<>(segments.size() + 1);
+        for (RollupSegment segment : segments) {
+            if (!segment.isRaw() || !segment.getFrom().isBefore(compactedBefore)) {
+                replaced.add(segment);
+                continue;
+            }
+            LocalDateTime split = segment.getTo().isBefore(compactedBefore) ? segment.getTo() : compactedBefore;
+            replaced.add(new RollupSegment(RollupGranularity.MINUTE,
+                    RollupGranularity.MINUTE.floor(segment.getFrom()), RollupGranularity.MINUTE.ceil(split)));
+            if (split.isBefore(segment.getTo())) {
+                replaced.add(new RollupSegment(null, split, segment.getTo()));
+            }
+        }
+        return replaced;
+    }
+}
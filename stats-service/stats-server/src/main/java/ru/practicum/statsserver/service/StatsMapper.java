@@ -2,32 +2,203 @@ package ru.practicum.statsserver.service;
 
 import lombok.experimental.UtilityClass;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.ViewIpStatsDto;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+import ru.practicum.statsserver.model.IpCount;
 import ru.practicum.statsserver.model.ItemStats;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 @UtilityClass
 public class StatsMapper {
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int MAX_IP_LENGTH = 45;
 
     public HitDto toDto(ItemStats itemStats) {
         return HitDto.builder()
                 .app(itemStats.getApp())
                 .uri(itemStats.getUri())
-                .ip(itemStats.getIp())
+                .ip(formatIp(itemStats.getIp()))
                 .timestamp(itemStats.getRequestDateTime().toString())
                 .build();
     }
 
-    public ItemStats toObject(HitDto hitDto) {
-        LocalDateTime dateTime = LocalDateTime.from(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
-                .parse(hitDto.getTimestamp()));
+    public ViewIpStatsDto toIpDto(IpCount count) {
+        return new ViewIpStatsDto(formatIp(count.getIp()), count.getHits());
+    }
 
+    public ItemStats toObject(HitDto hitDto) {
         return ItemStats.builder()
                 .app(hitDto.getApp())
                 .uri(hitDto.getUri())
-                .ip(hitDto.getIp())
-                .requestDateTime(dateTime)
+                .ip(parseIp(hitDto.getIp()))
+                .requestDateTime(parseRequestTime(hitDto))
                 .build();
     }
+
+    /**
+     * Epoch millis are a true instant and are turned into wall-clock time in the server's zone,
+     * the zone formatted timestamps are given in, so both fields agree for the same moment.
+     */
+    private LocalDateTime parseRequestTime(HitDto hitDto) {
+        if (Objects.nonNull(hitDto.getEpochMillis())) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(hitDto.getEpochMillis()), ZoneId.systemDefault());
+        }
+        if (Objects.isNull(hitDto.getTimestamp())) {
+            throw new NoValidParameterRequest("Hit must have either a timestamp or epochMillis");
+        }
+        return parseDateTime(hitDto.getTimestamp());
+    }
+
+    public LocalDateTime parseDateTime(String dateTime) {
+        if (Objects.isNull(dateTime)) {
+            throw new NoValidParameterRequest("Timestamp must not be empty");
+        }
+        try {
+            return LocalDateTime.parse(dateTime, DATE_TIME_FORMATTER);
+        } catch (DateTimeParseException e) {
+            throw new NoValidParameterRequest(String.format("Timestamp '%s' does not match yyyy-MM-dd HH:mm:ss",
+                    dateTime));
+        }
+    }
+
+    /**
+     * Converts an IPv4 or IPv6 literal to its 4 or 16 byte form, an IPv4-mapped IPv6 address to the 4 byte
+     * form of its IPv4 address. The literal is parsed here: InetAddress falls back to a blocking DNS lookup
+     * for anything it does not take for a literal, and it reads forms like "1" or "1.2.3" as IPv4 addresses.
+     */
+    public byte[] parseIp(String ip) {
+        byte[] address = null;
+        if (Objects.nonNull(ip) && ip.length() <= MAX_IP_LENGTH) {
+            address = ip.indexOf(':') >= 0 ? parseIpv6(ip) : parseIpv4(ip);
+        }
+        if (Objects.isNull(address)) {
+            throw new NoValidParameterRequest(String.format("Ip '%s' is not a valid IPv4 or IPv6 address", ip));
+        }
+        return address;
+    }
+
+    public String formatIp(byte[] ip) {
+        try {
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Stored ip has invalid length " + ip.length, e);
+        }
+    }
+
+    /**
+     * Exactly four dot-separated decimal octets of 0 to 255, without leading zeros.
+     */
+    private byte[] parseIpv4(String ip) {
+        String[] octets = ip.split("\\.", -1);
+        if (octets.length != 4) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < octets.length; i++) {
+            int octet = parseNumber(octets[i], 10, 3);
+            if (octet < 0 || octet > 255 || octets[i].length() > 1 && octets[i].charAt(0) == '0') {
+                return null;
+            }
+            address[i] = (byte) octet;
+        }
+        return address;
+    }
+
+    /**
+     * Colon-separated groups of one to four hex digits, where a single "::" stands for one or more zero groups
+     * and an IPv4 address may take the place of the last two groups. Zone ids are not accepted.
+     */
+    private byte[] parseIpv6(String ip) {
+        int gap = ip.indexOf("::");
+        if (gap >= 0 && ip.indexOf("::", gap + 1) >= 0) {
+            return null;
+        }
+        List<Integer> head = parseGroups(gap >= 0 ? ip.substring(0, gap) : ip, gap < 0);
+        List<Integer> tail = gap >= 0 ? parseGroups(ip.substring(gap + 2), true) : List.of();
+        if (Objects.isNull(head) || Objects.isNull(tail)
+                || (gap >= 0 ? head.size() + tail.size() >= 8 : head.size() != 8)) {
+            return null;
+        }
+
+        byte[] address = new byte[16];
+        for (int i = 0; i < head.size(); i++) {
+            putGroup(address, i, head.get(i));
+        }
+        for (int i = 0; i < tail.size(); i++) {
+            putGroup(address, 8 - tail.size() + i, tail.get(i));
+        }
+        return isIpv4Mapped(address) ? Arrays.copyOfRange(address, 12, 16) : address;
+    }
+
+    /**
+     * The 16-bit groups of one side of an IPv6 address, or null when a group is malformed.
+     */
+    private List<Integer> parseGroups(String part, boolean last) {
+        List<Integer> groups = new ArrayList<>(8);
+        if (part.isEmpty()) {
+            return groups;
+        }
+        String[] parts = part.split(":", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (last && i == parts.length - 1 && parts[i].indexOf('.') >= 0) {
+                byte[] ipv4 = parseIpv4(parts[i]);
+                if (Objects.isNull(ipv4)) {
+                    return null;
+                }
+                groups.add((ipv4[0] & 0xff) << 8 | ipv4[1] & 0xff);
+                groups.add((ipv4[2] & 0xff) << 8 | ipv4[3] & 0xff);
+            } else {
+                int group = parseNumber(parts[i], 16, 4);
+                if (group < 0) {
+                    return null;
+                }
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Parses one to the given number of ASCII digits in the radix, or returns -1.
+     */
+    private int parseNumber(String digits, int radix, int maxDigits) {
+        if (digits.isEmpty() || digits.length() > maxDigits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            int digit = c < 128 ? Character.digit(c, radix) : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+
+    private void putGroup(byte[] address, int index, int group) {
+        address[index * 2] = (byte) (group >>> 8);
+        address[index * 2 + 1] = (byte) group;
+    }
+
+    private boolean isIpv4Mapped(byte[] address) {
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[10] == (byte) 0xff && address[11] == (byte) 0xff;
+    }
 }
@@ -0,0 +1,330 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupSegment;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsKey;
+import ru.practicum.statsserver.model.StatsPoint;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.repository.StatsQueryRepository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the hit counts of closed days per (uri filter, day) and sums the days of a query range, computing
+ * only the partial days at the edges live. A day is closed once it ended more than the grace period ago.
+ * Unique counts are not cached: merging the live edges exactly would mean holding every distinct ip
+ * of the span, which costs more than the count(distinct) it saves.
+ * <p>
+ * Days are loaded a run of missing days at a time, one grouped query per run, and each filter remembers the
+ * runs it has loaded, so days without hits take no entry: a range reaching a century back costs one run.
+ * Entries are evicted per filter, least recently used first, once their total weight in rows exceeds the
+ * limit. Hits arriving late for a cached day drop that day. The invalidation only sees hits committed by this
+ * instance, so loaded runs also expire after the configured time, which bounds how long a late hit written
+ * through another instance can be missing.
+ */
+@Service
+public class StatsResultCache {
+    private final StatsQueryRepository queryRepository;
+    private final RollupService rollupService;
+    private final boolean enabled;
+    private final long maxWeight;
+    private final long graceMinutes;
+    private final long ttlMinutes;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Map<UriFilter, FilterEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong();
+
+    private long weight;
+
+    public StatsResultCache(StatsQueryRepository queryRepository,
+                            RollupService rollupService,
+                            MeterRegistry meterRegistry,
+                            @Value("${stats.cache.enabled:true}") boolean enabled,
+                            @Value("${stats.cache.max-weight:1000000}") long maxWeight,
+                            @Value("${stats.cache.grace-minutes:5}") long graceMinutes,
+                            @Value("${stats.cache.ttl-minutes:60}") long ttlMinutes) {
+        this.queryRepository = queryRepository;
+        this.rollupService = rollupService;
+        this.enabled = enabled;
+        this.maxWeight = maxWeight;
+        this.graceMinutes = graceMinutes;
+        this.ttlMinutes = ttlMinutes;
+
+        this.hitCounter = Counter.builder("stats.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("stats.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.weight", this, StatsResultCache::getWeight)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the same hit counts as an uncached query over the inclusive range [start, end], sorted by hits.
+     */
+    public List<StatsCount> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        LocalDateTime spanFrom = RollupGranularity.DAY.ceil(start);
+        LocalDateTime spanTo = min(RollupGranularity.DAY.floor(to), closedHorizon());
+
+        Map<StatsKey, Long> hits = new HashMap<>();
+        List<RollupSegment> live = new ArrayList<>();
+        if (spanFrom.isBefore(spanTo)) {
+            addClosedDays(hits, normalize(uriFilter), spanFrom, spanTo);
+            if (start.isBefore(spanFrom)) {
+                live.addAll(rollupService.planRange(start, spanFrom));
+            }
+            if (spanTo.isBefore(to)) {
+                live.addAll(rollupService.planRange(spanTo, to));
+            }
+        } else {
+            live.addAll(rollupService.planRange(start, to));
+        }
+        if (!live.isEmpty()) {
+            queryRepository.findHits(live, uriFilter, null, null).forEach(count ->
+                    hits.merge(new StatsKey(count.getAppId(), count.getUriId()), count.getHits(), Long::sum));
+        }
+
+        return hits.entrySet().stream()
+                .map(e -> new StatsCount(e.getKey().getAppId(), e.getKey().getUriId(), e.getValue()))
+                .sorted(StatsCount.BY_HITS_DESC)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Drops the cached days the hits fall on. Called after the hits are committed.
+     */
+    public void invalidate(List<ItemStats> items) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime horizon = closedHorizon();
+        List<LocalDateTime> lateDays = items.stream()
+                .map(ItemStats::getRequestDateTime)
+                .filter(time -> time.isBefore(horizon))
+                .map(RollupGranularity.DAY::floor)
+                .distinct()
+                .collect(Collectors.toList());
+        if (lateDays.isEmpty()) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        synchronized (this) {
+            for (FilterEntry entry : entries.values()) {
+                long weightBefore = entry.getWeight();
+                lateDays.forEach(entry::dropDay);
+                weight -= weightBefore - entry.getWeight();
+            }
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        synchronized (this) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Adds the cached days of [from, to) and loads the missing runs of days with one query.
+     */
+    private void addClosedDays(Map<StatsKey, Long> hits, UriFilter uriFilter, LocalDateTime from, LocalDateTime to) {
+        List<LocalDateTime[]> missing;
+        synchronized (this) {
+            FilterEntry entry = entries.get(uriFilter);
+            if (Objects.isNull(entry)) {
+                missing = List.<LocalDateTime[]>of(new LocalDateTime[]{from, to});
+            } else {
+                long weightBefore = entry.getWeight();
+                entry.expire(LocalDateTime.now().minusMinutes(ttlMinutes));
+                weight -= weightBefore - entry.getWeight();
+                missing = entry.addHits(hits, from, to);
+            }
+        }
+        if (missing.isEmpty()) {
+            hitCounter.increment();
+            return;
+        }
+        missCounter.increment();
+
+        long loadGeneration = generation.get();
+        LocalDateTime loadedAt = LocalDateTime.now();
+        List<RollupSegment> segments = new ArrayList<>();
+        for (LocalDateTime[] run : missing) {
+            segments.addAll(rollupService.planRange(run[0], run[1], RollupGranularity.DAY));
+        }
+        NavigableMap<LocalDateTime, Map<StatsKey, Long>> days = new TreeMap<>();
+        for (StatsPoint point : queryRepository.findSeries(segments, RollupGranularity.DAY, uriFilter)) {
+            days.computeIfAbsent(point.getBucket(), day -> new HashMap<>())
+                    .merge(new StatsKey(point.getAppId(), point.getUriId()), point.getHits(), Long::sum);
+            hits.merge(new StatsKey(point.getAppId(), point.getUriId()), point.getHits(), Long::sum);
+        }
+
+        synchronized (this) {
+            // a late hit committed while loading may be missing from the days, so they are not kept
+            if (loadGeneration != generation.get()) {
+                return;
+            }
+            FilterEntry entry = entries.computeIfAbsent(uriFilter, key -> new FilterEntry());
+            long weightBefore = entry.getWeight();
+            for (LocalDateTime[] run : missing) {
+                entry.addRun(run[0], run[1], loadedAt, days.subMap(run[0], true, run[1], false));
+            }
+            weight += entry.getWeight() - weightBefore;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<FilterEntry> it = entries.values().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            weight -= it.next().getWeight();
+            it.remove();
+        }
+    }
+
+    private LocalDateTime closedHorizon() {
+        return RollupGranularity.DAY.floor(LocalDateTime.now().minusMinutes(graceMinutes));
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static UriFilter normalize(UriFilter uriFilter) {
+        return Objects.isNull(uriFilter) ? null : new UriFilter(uriFilter.getIds().stream()
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList()), uriFilter.getPatterns());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class LoadedRun {
+        private final LocalDateTime to;
+        private final LocalDateTime loadedAt;
+    }
+
+    /**
+     * The cached days of one filter: the per-day hits of the days that have any, and the disjoint runs of days
+     * that were loaded, so that a day inside a run but without hits is known to be empty.
+     */
+    private static class FilterEntry {
+        private final NavigableMap<LocalDateTime, Map<StatsKey, Long>> days = new TreeMap<>();
+        private final NavigableMap<LocalDateTime, LoadedRun> runs = new TreeMap<>();
+        @Getter
+        private long weight;
+
+        /**
+         * Adds the hits of the loaded days of [from, to) and returns the runs of days that are not loaded.
+         */
+        List<LocalDateTime[]> addHits(Map<StatsKey, Long> hits, LocalDateTime from, LocalDateTime to) {
+            List<LocalDateTime[]> missing = new ArrayList<>();
+            LocalDateTime position = from;
+            Map.Entry<LocalDateTime, LoadedRun> first = runs.floorEntry(from);
+            LocalDateTime searchFrom = Objects.nonNull(first) && first.getValue().getTo().isAfter(from)
+                    ? first.getKey() : from;
+            for (Map.Entry<LocalDateTime, LoadedRun> run : runs.subMap(searchFrom, true, to, false).entrySet()) {
+                LocalDateTime runFrom = run.getKey().isAfter(position) ? run.getKey() : position;
+                LocalDateTime runTo = min(run.getValue().getTo(), to);
+                if (position.isBefore(runFrom)) {
+                    missing.add(new LocalDateTime[]{position, runFrom});
+                }
+                days.subMap(runFrom, true, runTo, false).values().forEach(day -> day.forEach((key, count) ->
+                        hits.merge(key, count, Long::sum)));
+                position = runTo;
+            }
+            if (position.isBefore(to)) {
+                missing.add(new LocalDateTime[]{position, to});
+            }
+            return missing;
+        }
+
+        /**
+         * Keeps a loaded run unless a concurrent load already covered part of it.
+         */
+        void addRun(LocalDateTime from, LocalDateTime to, LocalDateTime loadedAt,
+                    Map<LocalDateTime, Map<StatsKey, Long>> loaded) {
+            Map.Entry<LocalDateTime, LoadedRun> previous = runs.lowerEntry(to);
+            if (Objects.nonNull(previous) && previous.getValue().getTo().isAfter(from)) {
+                return;
+            }
+            runs.put(from, new LoadedRun(to, loadedAt));
+            weight++;
+            loaded.forEach((day, hits) -> {
+                days.put(day, hits);
+                weight += hits.size();
+            });
+        }
+
+        void dropDay(LocalDateTime day) {
+            Map.Entry<LocalDateTime, LoadedRun> run = runs.floorEntry(day);
+            if (Objects.isNull(run) || !run.getValue().getTo().isAfter(day)) {
+                return;
+            }
+            runs.remove(run.getKey());
+            weight--;
+            if (run.getKey().isBefore(day)) {
+                runs.put(run.getKey(), new LoadedRun(day, run.getValue().getLoadedAt()));
+                weight++;
+            }
+            LocalDateTime next = day.plusDays(1);
+            if (next.isBefore(run.getValue().getTo())) {
+                runs.put(next, run.getValue());
+                weight++;
+            }
+            Map<StatsKey, Long> dropped = days.remove(day);
+            if (Objects.nonNull(dropped)) {
+                weight -= dropped.size();
+            }
+        }
+
+        void expire(LocalDateTime loadedBefore) {
+            Iterator<Map.Entry<LocalDateTime, LoadedRun>> it = runs.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<LocalDateTime, LoadedRun> run = it.next();
+                if (run.getValue().getLoadedAt().isBefore(loadedBefore)) {
+                    it.remove();
+                    weight--;
+                    Map<LocalDateTime, Map<StatsKey, Long>> expired = days.subMap(run.getKey(), true,
+                            run.getValue().getTo(), false);
+                    weight -= expired.values().stream().mapToLong(Map::size).sum();
+                    expired.clear();
+                }
+            }
+        }
+    }
+}
@@ -1,39 +1,538 @@
 package ru.practicum.statsserver.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.practicum.statsdto.EntityStatsQueryDto;
+import ru.practicum.statsdto.HitBatchResultDto;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.StatsQueryDto;
+import ru.practicum.statsdto.StatsWindowDto;
+import ru.practicum.statsdto.ViewEntityStatsDto;
+import ru.practicum.statsdto.ViewIpStatsDto;
 import ru.practicum.statsdto.ViewStatsDto;
+import ru.practicum.statsdto.ViewStatsPointDto;
+import ru.practicum.statsdto.ViewStatsSeriesDto;
+import ru.practicum.statsdto.ViewStatsWindowDto;
 import ru.practicum.statsserver.exception.NoValidParameterRequest;
+import ru.practicum.statsserver.metrics.StatsMetrics;
+import ru.practicum.statsserver.model.DictionaryType;
 import ru.practicum.statsserver.model.ItemStats;
-import ru.practicum.statsserver.repository.StatsRepository;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsCursor;
+import ru.practicum.statsserver.model.StatsPage;
+import ru.practicum.statsserver.model.StatsPoint;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.model.UriPattern;
+import ru.practicum.statsserver.repository.StatsQueryRepository;
 
-import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StatsService {
-    private final StatsRepository repository;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern ENTITY_TYPE_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
 
-    @Transactional
-    public void saveRecord(HitDto hitDto) {
-        ItemStats itemStats = StatsMapper.toObject(hitDto);
-        repository.save(itemStats);
+    private final StatsQueryRepository queryRepository;
+    private final HitWriter writer;
+    private final HitBuffer buffer;
+    private final RollupService rollupService;
+    private final UniqueSketchService uniqueSketchService;
+    private final UniqueBitmapService uniqueBitmapService;
+    private final DictionaryService dictionaryService;
+    private final HotStatsService hotStatsService;
+    private final TrendingService trendingService;
+    private final StatsResultCache resultCache;
+    private final StatsMetrics metrics;
+    private final HitDeduplicator deduplicator;
+    private final CompactionWatermark compactionWatermark;
+
+    @Value("${stats.series.max-points:10000}")
+    private long maxSeriesPoints;
+
+    @Value("${stats.query.max-windows:100}")
+    private int maxQueryWindows;
+
+    /**
+     * The idempotency key makes a resent write apply only once; it is used by synchronous writes, a buffered
+     * hit is applied once by the buffer itself. Null writes without a key.
+     */
+    public void saveRecord(HitDto hitDto, String idempotencyKey) {
+        validateIdempotencyKey(idempotencyKey);
+        metrics.recordHit();
+        List<ItemStats> items = deduplicator.filter(List.of(StatsMapper.toObject(hitDto)));
+        if (items.isEmpty()) {
+            return;
+        }
+        if (buffer.isEnabled()) {
+            buffer.offer(items);
+        } else {
+            writer.write(idempotencyKey, items);
+        }
+        deduplicator.record(items);
     }
 
-    public List<ViewStatsDto> getAllStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        validateDates(start, end);
+    public HitBatchResultDto saveRecords(List<HitDto> hitDtos, String idempotencyKey) {
+        validateIdempotencyKey(idempotencyKey);
+        metrics.recordBatch(hitDtos.size());
+        List<ItemStats> items = deduplicator.filter(hitDtos.stream()
+                .map(StatsMapper::toObject)
+                .collect(Collectors.toList()));
+        int duplicates = hitDtos.size() - items.size();
+
+        if (items.isEmpty() || buffer.isEnabled()) {
+            if (!items.isEmpty()) {
+                buffer.offer(items);
+                deduplicator.record(items);
+            }
+            return HitBatchResultDto.builder()
+                    .accepted(items.size())
+                    .batches(List.of())
+                    .duplicates(duplicates)
+                    .build();
+        }
+
+        List<Integer> batches = writer.write(idempotencyKey, items);
+        deduplicator.record(items);
+        return HitBatchResultDto.builder()
+                .accepted(batches.stream().mapToInt(Integer::intValue).sum())
+                .batches(batches)
+                .duplicates(duplicates)
+                .build();
+    }
+
+    public List<ViewStatsDto> getAllStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                          Boolean approximate) {
+        return getStats(start, end, uris, unique, approximate, null, null).getStats();
+    }
+
+    public StatsPage getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                              Boolean approximate, Integer limit, String cursor) {
+        String type = StatsMetrics.queryType(unique, approximate);
+        StatsPage page = metrics.timeQuery("stats", type, uris,
+                () -> findStats(start, end, uris, unique, approximate, limit, cursor));
+        metrics.recordResults("stats", type, page.getStats().size());
+        return page;
+    }
+
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                            Boolean approximate, Consumer<ViewStatsDto> consumer) {
+        String type = StatsMetrics.queryType(unique, approximate);
+        AtomicLong rows = new AtomicLong();
+        metrics.timeStream(type, uris, () -> forEachStats(start, end, uris, unique, approximate, dto -> {
+            rows.incrementAndGet();
+            consumer.accept(dto);
+        }));
+        metrics.recordResults("stream", type, rows.get());
+    }
+
+    public List<ViewStatsDto> getTopStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                          Boolean approximate, Integer limit) {
+        String type = StatsMetrics.queryType(unique, approximate);
+        List<ViewStatsDto> stats = metrics.timeQuery("top", type, uris,
+                () -> findTopStats(start, end, uris, unique, approximate, limit));
+        metrics.recordResults("top", type, stats.size());
+        return stats;
+    }
+
+    public List<ViewStatsDto> getTrending(Integer window, Integer limit) {
+        List<ViewStatsDto> stats = metrics.timeQuery("trending", "hits", null,
+                () -> dictionaryService.toDtos(trendingService.getTopUris(window, limit)));
+        metrics.recordResults("trending", "hits", stats.size());
+        return stats;
+    }
+
+    public List<ViewIpStatsDto> getTopIps(Integer window, Integer limit) {
+        List<ViewIpStatsDto> stats = metrics.timeQuery("top_ips", "hits", null,
+                () -> trendingService.getTopIps(window, limit).stream()
+                        .map(StatsMapper::toIpDto)
+                        .collect(Collectors.toList()));
+        metrics.recordResults("top_ips", "hits", stats.size());
+        return stats;
+    }
+
+    public List<ViewStatsSeriesDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                              String interval, Boolean unique) {
+        String type = StatsMetrics.queryType(unique, false);
+        List<ViewStatsSeriesDto> series = metrics.timeQuery("series", type, uris,
+                () -> findSeries(start, end, uris, interval, unique));
+        metrics.recordResults("series", type, series.stream().mapToLong(dto -> dto.getPoints().size()).sum());
+        return series;
+    }
+
+    public List<ViewStatsDto> getRollupStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             Boolean unique) {
+        List<ViewStatsDto> stats = metrics.timeQuery("rollup", "hits", uris,
+                () -> findRollupStats(start, end, uris, unique));
+        metrics.recordResults("rollup", "hits", stats.size());
+        return stats;
+    }
+
+    /**
+     * Counts the uris of the query over each of its windows. The uris are resolved once for all windows.
+     */
+    public List<ViewStatsWindowDto> queryStats(StatsQueryDto query) {
+        boolean unique = Boolean.TRUE.equals(query.getUnique());
+        boolean approximate = Boolean.TRUE.equals(query.getApproximate());
+        String type = StatsMetrics.queryType(unique, approximate);
+        List<ViewStatsWindowDto> windows = metrics.timeQuery("query", type, query.getUris(),
+                () -> findWindows(query.getUris(), unique, approximate, query.getWindows()));
+        metrics.recordResults("query", type, windows.stream().mapToLong(dto -> dto.getStats().size()).sum());
+        return windows;
+    }
+
+    /**
+     * A bulk query is approximate when any of its windows is.
+     */
+    public boolean isApproximate(StatsQueryDto query) {
+        boolean unique = Boolean.TRUE.equals(query.getUnique());
+        boolean approximate = Boolean.TRUE.equals(query.getApproximate());
+        return Objects.nonNull(query.getWindows()) && query.getWindows().stream()
+                .anyMatch(window -> isApproximate(StatsMapper.parseDateTime(window.getStart()), unique, approximate));
+    }
 
+    /**
+     * Counts the entities of one type by id, without the caller formatting their uris or parsing them back.
+     */
+    public ViewEntityStatsDto getEntityStats(EntityStatsQueryDto query) {
+        boolean unique = Boolean.TRUE.equals(query.getUnique());
+        String type = StatsMetrics.queryType(unique, false);
+        ViewEntityStatsDto stats = metrics.timeQuery("entities", type, true,
+                () -> findEntityStats(query, unique));
+        metrics.recordResults("entities", type, stats.getIds().length);
+        return stats;
+    }
+
+    public boolean isApproximate(EntityStatsQueryDto query) {
+        return isApproximate(StatsMapper.parseDateTime(query.getStart()), Boolean.TRUE.equals(query.getUnique()),
+                false);
+    }
+
+    /**
+     * Unique counts are approximate only when asked for; exact counts of a range starting before the raw hits
+     * were compacted are answered by the unique index or rejected.
+     */
+    public boolean isApproximate(LocalDateTime start, Boolean unique, Boolean approximate) {
+        return unique && approximate;
+    }
+
+    public double getApproximationErrorBound() {
+        return uniqueSketchService.getErrorBound();
+    }
+
+    private StatsPage findStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                Boolean approximate, Integer limit, String cursor) {
+        validateQuery(start, end, unique, approximate);
+        validateLimit(limit);
+        StatsCursor after = Objects.isNull(cursor) ? null : StatsCursor.decode(cursor);
+
+        UriFilter uriFilter = dictionaryService.findUriFilter(uris);
+        if (Objects.nonNull(uriFilter) && uriFilter.isEmpty()) {
+            return new StatsPage(List.of(), null);
+        }
+
+        List<StatsCount> counts = countHits(start, end, uriFilter, unique, approximate, after, limit);
+        String nextCursor = Objects.nonNull(limit) && counts.size() == limit
+                ? StatsCursor.of(counts.get(counts.size() - 1)).encode()
+                : null;
+        return new StatsPage(dictionaryService.toDtos(counts), nextCursor);
+    }
+
+    private List<ViewStatsWindowDto> findWindows(List<String> uris, boolean unique, boolean approximate,
+                                                 List<StatsWindowDto> windows) {
+        if (Objects.isNull(windows) || windows.isEmpty() || windows.size() > maxQueryWindows) {
+            throw new NoValidParameterRequest(String.format("Query must have between 1 and %d windows!",
+                    maxQueryWindows));
+        }
+        List<LocalDateTime[]> ranges = new ArrayList<>(windows.size());
+        for (StatsWindowDto window : windows) {
+            LocalDateTime start = StatsMapper.parseDateTime(window.getStart());
+            LocalDateTime end = StatsMapper.parseDateTime(window.getEnd());
+            validateQuery(start, end, unique, approximate);
+            ranges.add(new LocalDateTime[]{start, end});
+        }
+
+        UriFilter uriFilter = dictionaryService.findUriFilter(uris);
+        List<ViewStatsWindowDto> result = new ArrayList<>(windows.size());
+        for (int i = 0; i < windows.size(); i++) {
+            LocalDateTime[] range = ranges.get(i);
+            List<ViewStatsDto> stats = Objects.nonNull(uriFilter) && uriFilter.isEmpty()
+                    ? List.of()
+                    : dictionaryService.toDtos(countHits(range[0], range[1], uriFilter, unique, approximate, null, null));
+            result.add(new ViewStatsWindowDto(windows.get(i).getStart(), windows.get(i).getEnd(), stats));
+        }
+        return result;
+    }
+
+    /**
+     * Sums the hits of all uris matched by each of the given uris or patterns, one row per app and pattern.
+     * A uri matched by two patterns counts towards both.
+     */
+    private List<ViewStatsDto> findRollupStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                               Boolean unique) {
+        validateDates(start, end);
         if (unique) {
-            return repository.findAllUnique(start, end, uris);
+            throw new NoValidParameterRequest("Unique hits of several uris cannot be rolled up!");
         }
         if (Objects.isNull(uris) || uris.isEmpty()) {
-            return repository.findAllWithoutUris(start, end);
+            throw new NoValidParameterRequest("Roll-up needs at least one uri or pattern!");
+        }
+
+        UriFilter uriFilter = dictionaryService.findUriFilter(uris);
+        if (uriFilter.isEmpty()) {
+            return List.of();
+        }
+        List<StatsCount> counts = countHits(start, end, uriFilter, false, false, null, null);
+        Map<Integer, String> uriValues = dictionaryService.lookupValues(DictionaryType.URI, counts.stream()
+                .map(StatsCount::getUriId)
+                .collect(Collectors.toSet()));
+        Map<Integer, String> apps = dictionaryService.lookupValues(DictionaryType.APP, counts.stream()
+                .map(StatsCount::getAppId)
+                .collect(Collectors.toSet()));
+
+        List<ViewStatsDto> stats = new ArrayList<>();
+        uris.stream().distinct().forEach(uri -> {
+            Predicate<String> matches = UriPattern.isPattern(uri) ? UriPattern.of(uri)::matches : uri::equals;
+            Map<Integer, Long> hitsByApp = new HashMap<>();
+            for (StatsCount count : counts) {
+                if (matches.test(uriValues.get(count.getUriId()))) {
+                    hitsByApp.merge(count.getAppId(), count.getHits(), Long::sum);
+                }
+            }
+            hitsByApp.forEach((appId, hits) -> stats.add(new ViewStatsDto(apps.get(appId), uri, hits)));
+        });
+        stats.sort(Comparator.comparing(ViewStatsDto::getHits).reversed()
+                .thenComparing(ViewStatsDto::getApp)
+                .thenComparing(ViewStatsDto::getUri));
+        return stats;
+    }
+
+    private ViewEntityStatsDto findEntityStats(EntityStatsQueryDto query, boolean unique) {
+        if (Objects.isNull(query.getApp()) || query.getApp().isBlank()) {
+            throw new NoValidParameterRequest("App must not be empty!");
+        }
+        if (Objects.isNull(query.getEntityType()) || !ENTITY_TYPE_PATTERN.matcher(query.getEntityType()).matches()) {
+            throw new NoValidParameterRequest(String.format("Entity type '%s' must be a single path segment!",
+                    query.getEntityType()));
+        }
+        if (Objects.isNull(query.getIds()) || query.getIds().length == 0) {
+            throw new NoValidParameterRequest("Ids must not be empty!");
+        }
+        LocalDateTime start = StatsMapper.parseDateTime(query.getStart());
+        LocalDateTime end = StatsMapper.parseDateTime(query.getEnd());
+        validateQuery(start, end, unique, false);
+
+        String prefix = "/" + query.getEntityType() + "/";
+        Map<String, Long> entityIds = new HashMap<>(query.getIds().length * 2);
+        for (long id : query.getIds()) {
+            entityIds.put(prefix + id, id);
+        }
+        Integer appId = dictionaryService.findIds(DictionaryType.APP, List.of(query.getApp())).get(query.getApp());
+        Map<Integer, Long> entityByUriId = new HashMap<>();
+        dictionaryService.findIds(DictionaryType.URI, entityIds.keySet())
+                .forEach((uri, uriId) -> entityByUriId.put(uriId, entityIds.get(uri)));
+
+        List<StatsCount> counts = Objects.isNull(appId) || entityByUriId.isEmpty()
+                ? List.of()
+                : countHits(start, end, UriFilter.of(new ArrayList<>(entityByUriId.keySet())), unique, false,
+                        null, null).stream()
+                        .filter(count -> appId.equals(count.getAppId()))
+                        .sorted(Comparator.comparing(count -> entityByUriId.get(count.getUriId())))
+                        .collect(Collectors.toList());
+
+        long[] ids = new long[counts.size()];
+        long[] hits = new long[counts.size()];
+        for (int i = 0; i < counts.size(); i++) {
+            ids[i] = entityByUriId.get(counts.get(i).getUriId());
+            hits[i] = counts.get(i).getHits();
+        }
+        return new ViewEntityStatsDto(query.getApp(), query.getEntityType(), ids, hits);
+    }
+
+    private void forEachStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                              Boolean approximate, Consumer<ViewStatsDto> consumer) {
+        validateQuery(start, end, unique, approximate);
+
+        UriFilter uriFilter = dictionaryService.findUriFilter(uris);
+        if (Objects.nonNull(uriFilter) && uriFilter.isEmpty()) {
+            return;
+        }
+
+        Consumer<StatsCount> mapper = count -> consumer.accept(dictionaryService.toDto(count));
+        if (isApproximate(start, unique, approximate)) {
+            uniqueSketchService.getStats(start, end, uriFilter).forEach(mapper);
+        } else if (unique && useUniqueIndex(start, end, uriFilter)) {
+            uniqueBitmapService.getStats(start, end, uriFilter).forEach(mapper);
+        } else if (unique) {
+            queryRepository.streamUnique(start, end, uriFilter, mapper);
+        } else {
+            queryRepository.streamHits(rollupService.plan(start, end), uriFilter, mapper);
+        }
+    }
+
+    private List<ViewStatsDto> findTopStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            Boolean unique, Boolean approximate, Integer limit) {
+        if (unique || !hotStatsService.covers(start)) {
+            return findStats(start, end, uris, unique, approximate, limit, null).getStats();
+        }
+        validateQuery(start, end, unique, approximate);
+        validateLimit(limit);
+
+        UriFilter uriFilter = dictionaryService.findUriFilter(uris);
+        if (Objects.nonNull(uriFilter) && uriFilter.isEmpty()) {
+            return List.of();
+        }
+        // the hot window filters by id, so patterns are matched by the database instead
+        if (Objects.nonNull(uriFilter) && uriFilter.hasPatterns()) {
+            return dictionaryService.toDtos(countHits(start, end, uriFilter, false, false, null, limit));
+        }
+        return dictionaryService.toDtos(hotStatsService.getTop(start, end, uriFilter, limit));
+    }
+
+    private List<ViewStatsSeriesDto> findSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                String interval, Boolean unique) {
+        validateDates(start, end);
+        RollupGranularity granularity = RollupGranularity.fromInterval(interval);
+        long points = granularity.getUnit().between(granularity.floor(start), end) + 1;
+        if (points > maxSeriesPoints) {
+            throw new NoValidParameterRequest(String.format("Range holds %d points of %s, at most %d are allowed!",
+                    points, interval, maxSeriesPoints));
+        }
+
+        if (unique && compactionWatermark.covers(start)) {
+            throw new NoValidParameterRequest(String.format("Unique series are not kept before %s!",
+                    compactionWatermark.get().format(DATE_TIME_FORMATTER)));
+        }
+
+        UriFilter uriFilter = dictionaryService.findUriFilter(uris);
+        if (Objects.nonNull(uriFilter) && uriFilter.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        List<StatsPoint> rows = unique
+                ? queryRepository.findUniqueSeries(start, to, granularity, uriFilter)
+                : queryRepository.findSeries(rollupService.planRange(start, to, granularity), granularity, uriFilter);
+        return toSeries(rows);
+    }
+
+    private List<StatsCount> countHits(LocalDateTime start, LocalDateTime end, UriFilter uriFilter, Boolean unique,
+                                       Boolean approximate, StatsCursor after, Integer limit) {
+        if (isApproximate(start, unique, approximate)) {
+            return page(uniqueSketchService.getStats(start, end, uriFilter), after, limit);
+        }
+        if (unique && useUniqueIndex(start, end, uriFilter)) {
+            return page(uniqueBitmapService.getStats(start, end, uriFilter), after, limit);
+        }
+        if (!unique && resultCache.isEnabled() && Objects.isNull(after) && Objects.isNull(limit)) {
+            return resultCache.getStats(start, end, uriFilter);
+        }
+        if (unique) {
+            return queryRepository.findUnique(start, end, uriFilter, after, limit);
+        }
+        return queryRepository.findHits(rollupService.plan(start, end), uriFilter, after, limit);
+    }
+
+    private List<StatsCount> page(List<StatsCount> counts, StatsCursor after, Integer limit) {
+        return counts.stream()
+                .filter(count -> Objects.isNull(after) || after.isBefore(count))
+                .limit(Objects.isNull(limit) ? Long.MAX_VALUE : limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Groups rows ordered by app, uri and bucket into one series per app and uri.
+     */
+    private List<ViewStatsSeriesDto> toSeries(List<StatsPoint> rows) {
+        Map<Integer, String> apps = dictionaryService.lookupValues(DictionaryType.APP, rows.stream()
+                .map(StatsPoint::getAppId)
+                .collect(Collectors.toSet()));
+        Map<Integer, String> uris = dictionaryService.lookupValues(DictionaryType.URI, rows.stream()
+                .map(StatsPoint::getUriId)
+                .collect(Collectors.toSet()));
+
+        List<ViewStatsSeriesDto> series = new ArrayList<>();
+        StatsPoint previous = null;
+        for (StatsPoint row : rows) {
+            if (Objects.isNull(previous) || !previous.getAppId().equals(row.getAppId())
+                    || !previous.getUriId().equals(row.getUriId())) {
+                series.add(new ViewStatsSeriesDto(apps.get(row.getAppId()), uris.get(row.getUriId()),
+                        new ArrayList<>()));
+            }
+            series.get(series.size() - 1).getPoints().add(new ViewStatsPointDto(
+                    row.getBucket().format(DATE_TIME_FORMATTER), row.getHits(), row.getUniqueHits()));
+            previous = row;
+        }
+        return series;
+    }
+
+    /**
+     * Exact unique counts need the raw hits, or the unique index, for the whole range.
+     */
+    public void validateQuery(LocalDateTime start, LocalDateTime end, Boolean unique, Boolean approximate) {
+        validateDates(start, end);
+        if (unique && approximate) {
+            validateApproximate();
+        }
+        if (unique && !approximate && compactionWatermark.covers(start) && !uniqueBitmapService.covers(start)) {
+            throw exactUniqueNotKept();
+        }
+    }
+
+    /**
+     * Whether exact unique counts of the range come from the unique index. Before the compaction watermark
+     * they can only come from there, so a range the index does not answer is rejected.
+     */
+    private boolean useUniqueIndex(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        if (uniqueBitmapService.covers(start, end, uriFilter)) {
+            return true;
+        }
+        if (compactionWatermark.covers(start)) {
+            throw exactUniqueNotKept();
+        }
+        return false;
+    }
+
+    private NoValidParameterRequest exactUniqueNotKept() {
+        return new NoValidParameterRequest(String.format(
+                "Exact unique hits are not kept before %s, ask for approximate ones!",
+                compactionWatermark.get().format(DATE_TIME_FORMATTER)));
+    }
+
+    private void validateIdempotencyKey(String idempotencyKey) {
+        if (Objects.nonNull(idempotencyKey)
+                && (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new NoValidParameterRequest(String.format("Idempotency key must be 1 to %d characters long!",
+                    MAX_IDEMPOTENCY_KEY_LENGTH));
+        }
+    }
+
+    private void validateLimit(Integer limit) {
+        if (Objects.nonNull(limit) && limit <= 0) {
+            throw new NoValidParameterRequest("Limit must be positive!");
+        }
+    }
+
+    private void validateApproximate() {
+        if (!uniqueSketchService.isEnabled()) {
+            throw new NoValidParameterRequest("Approximate unique counting is disabled on this server!");
         }
-        return repository.findAllNotUnique(start, end, uris);
     }
 
     private void validateDates(LocalDateTime start, LocalDateTime end) {
@@ -0,0 +1,258 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+import ru.practicum.statsserver.model.IpCount;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsKey;
+import ru.practicum.statsserver.sketch.CountMinSketch;
+import ru.practicum.statsserver.sketch.MurmurHash3;
+import ru.practicum.statsserver.sketch.SpaceSaving;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Most hit uris and most active ips of the last minutes, kept in memory so that neither needs
+ * a grouping over the stats table. Hits are counted in the minute this instance committed them.
+ * Every minute keeps a Space-Saving summary holding the candidates and a Count-Min sketch counting
+ * them, split into stripes so that concurrent writers rarely share a lock; a writer thread always
+ * updates the same stripe. The completed minutes of each window are merged once per minute, so a read
+ * only merges the stripes of the current minute on top.
+ */
+@Slf4j
+@Service
+public class TrendingService {
+    private final boolean enabled;
+    private final int[] windows;
+    private final int capacity;
+    private final int width;
+    private final int depth;
+    private final int stripes;
+    private final Timer recordTimer;
+
+    private final ConcurrentSkipListMap<Long, Minute> minutes = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Window<StatsKey>> uriWindows = new HashMap<>();
+    private final Map<Integer, Window<ByteBuffer>> ipWindows = new HashMap<>();
+    private long windowsMinute = Long.MIN_VALUE;
+
+    public TrendingService(MeterRegistry meterRegistry,
+                           @Value("${stats.trending.enabled:true}") boolean enabled,
+                           @Value("${stats.trending.windows:1,5,60}") int[] windows,
+                           @Value("${stats.trending.capacity:200}") int capacity,
+                           @Value("${stats.trending.count-min.width:2048}") int width,
+                           @Value("${stats.trending.count-min.depth:4}") int depth,
+                           @Value("${stats.trending.stripes:4}") int stripes) {
+        this.enabled = enabled;
+        this.windows = Arrays.stream(windows).sorted().toArray();
+        this.capacity = capacity;
+        this.width = width;
+        this.depth = depth;
+        this.stripes = Math.max(1, stripes);
+
+        this.recordTimer = Timer.builder("stats.trending.record")
+                .description("Time spent updating the trending sketches per committed batch")
+                .register(meterRegistry);
+        meterRegistry.gauge("stats.trending.minutes", minutes, Map::size);
+        if (enabled) {
+            log.info("TrendingService: tracking {} top uris and ips over {} minute windows, {} bytes per minute",
+                    capacity, Arrays.toString(this.windows),
+                    2L * this.stripes * new CountMinSketch(width, depth).sizeInBytes());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(List<ItemStats> items) {
+        if (!enabled) {
+            return;
+        }
+        recordTimer.record(() -> {
+            long now = currentMinute();
+            Minute minute = minutes.computeIfAbsent(now, key -> new Minute());
+            Stripe stripe = minute.stripes[(int) Math.floorMod(Thread.currentThread().getId(), (long) stripes)];
+            synchronized (stripe) {
+                for (ItemStats item : items) {
+                    stripe.uris.add(new StatsKey(item.getAppId(), item.getUriId()));
+                    stripe.ips.add(ByteBuffer.wrap(item.getIp()));
+                }
+            }
+            minutes.headMap(now - windows[windows.length - 1]).clear();
+        });
+    }
+
+    /**
+     * Uris by estimated hits over the window: the current minute and the given number of minutes before it.
+     */
+    public List<StatsCount> getTopUris(int window, int limit) {
+        validate(window, limit);
+        List<Map.Entry<StatsKey, Long>> top;
+        synchronized (this) {
+            refreshWindows();
+            top = top(uriWindows.computeIfAbsent(window, w -> merge(completed(w), stripe -> stripe.uris,
+                    TrendingService::hashUri)), merge(current(), stripe -> stripe.uris, TrendingService::hashUri),
+                    limit);
+        }
+        return top.stream()
+                .map(entry -> new StatsCount(entry.getKey().getAppId(), entry.getKey().getUriId(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ips by estimated hits over the window, the same way as {@link #getTopUris}.
+     */
+    public List<IpCount> getTopIps(int window, int limit) {
+        validate(window, limit);
+        List<Map.Entry<ByteBuffer, Long>> top;
+        synchronized (this) {
+            refreshWindows();
+            top = top(ipWindows.computeIfAbsent(window, w -> merge(completed(w), stripe -> stripe.ips,
+                    TrendingService::hashIp)), merge(current(), stripe -> stripe.ips, TrendingService::hashIp),
+                    limit);
+        }
+        return top.stream()
+                .map(entry -> new IpCount(entry.getKey().array(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private void validate(int window, int limit) {
+        if (!enabled) {
+            throw new NoValidParameterRequest("Trending stats are disabled on this server!");
+        }
+        if (Arrays.binarySearch(windows, window) < 0) {
+            throw new NoValidParameterRequest(String.format("Window must be one of %s minutes!",
+                    Arrays.toString(windows)));
+        }
+        if (limit <= 0 || limit > capacity) {
+            throw new NoValidParameterRequest(String.format("Limit must be between 1 and %d!", capacity));
+        }
+    }
+
+    private void refreshWindows() {
+        long now = currentMinute();
+        if (windowsMinute != now) {
+            uriWindows.clear();
+            ipWindows.clear();
+            windowsMinute = now;
+        }
+    }
+
+    private Collection<Minute> completed(int window) {
+        return minutes.subMap(windowsMinute - window, windowsMinute).values();
+    }
+
+    private Collection<Minute> current() {
+        Minute minute = minutes.get(windowsMinute);
+        return minute == null ? List.of() : List.of(minute);
+    }
+
+    /**
+     * Merges the stripes of the minutes; each stripe is locked while read, as a writer that took the
+     * time just before the minute ended may still be updating it.
+     */
+    private <K> Window<K> merge(Collection<Minute> merged, Function<Stripe, HeavyHitters<K>> dimension,
+                                ToLongFunction<K> hash) {
+        Window<K> window = new Window<>(new CountMinSketch(width, depth), hash);
+        for (Minute minute : merged) {
+            for (Stripe stripe : minute.stripes) {
+                synchronized (stripe) {
+                    HeavyHitters<K> hitters = dimension.apply(stripe);
+                    window.candidates.addAll(hitters.candidates.keys());
+                    window.counts.merge(hitters.counts);
+                }
+            }
+        }
+        return window;
+    }
+
+    private static <K> List<Map.Entry<K, Long>> top(Window<K> completed, Window<K> current, int limit) {
+        Set<K> candidates = new HashSet<>(completed.candidates);
+        candidates.addAll(current.candidates);
+
+        PriorityQueue<Map.Entry<K, Long>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        for (K key : candidates) {
+            long hash = completed.hash.applyAsLong(key);
+            long estimate = completed.counts.estimate(hash) + current.counts.estimate(hash);
+            top.add(Map.entry(key, estimate));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Map.Entry<K, Long>> result = new ArrayList<>(top);
+        result.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+        return result;
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+
+    private static long hashUri(StatsKey key) {
+        return MurmurHash3.hash64(ByteBuffer.allocate(8).putInt(key.getAppId()).putInt(key.getUriId()).array());
+    }
+
+    private static long hashIp(ByteBuffer ip) {
+        return MurmurHash3.hash64(ip.array());
+    }
+
+    private final class Minute {
+        private final Stripe[] stripes = new Stripe[TrendingService.this.stripes];
+
+        private Minute() {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+    }
+
+    private final class Stripe {
+        private final HeavyHitters<StatsKey> uris = new HeavyHitters<>(TrendingService::hashUri);
+        private final HeavyHitters<ByteBuffer> ips = new HeavyHitters<>(TrendingService::hashIp);
+    }
+
+    private final class HeavyHitters<K> {
+        private final SpaceSaving<K> candidates = new SpaceSaving<>(capacity);
+        private final CountMinSketch counts = new CountMinSketch(width, depth);
+        private final ToLongFunction<K> hash;
+
+        private HeavyHitters(ToLongFunction<K> hash) {
+            this.hash = hash;
+        }
+
+        private void add(K key) {
+            candidates.offer(key);
+            counts.add(hash.applyAsLong(key));
+        }
+    }
+
+    private static final class Window<K> {
+        private final Set<K> candidates = new HashSet<>();
+        private final CountMinSketch counts;
+        private final ToLongFunction<K> hash;
+
+        private Window(CountMinSketch counts, ToLongFunction<K> hash) {
+            this.counts = counts;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.repository.CompactionRepository;
+import ru.practicum.statsserver.repository.UniqueBitmapRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Indexes the raw hits written before the exact unique index was enabled, walking back from its valid-from
+ * bound one day per run: every hit of the day gets its ip id and a bitmap delta, then the bound moves to
+ * the start of the day. Hits indexed twice only set bits that are already set, so a run that fails halfway
+ * is simply repeated.
+ * <p>
+ * Raw hits before the compaction watermark are gone, so the bound never moves below it: the backfill stops
+ * there, and reports every hit indexed only when nothing was ever compacted.
+ */
+@Slf4j
+@Service
+public class UniqueBitmapBackfillService {
+    private final UniqueBitmapRepository bitmapRepository;
+    private final CompactionRepository compactionRepository;
+    private final UniqueBitmapService uniqueBitmapService;
+    private final DictionaryService dictionaryService;
+    private final ShardRouter router;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private final Counter backfilledRows;
+
+    public UniqueBitmapBackfillService(UniqueBitmapRepository bitmapRepository,
+                                       CompactionRepository compactionRepository,
+                                       UniqueBitmapService uniqueBitmapService,
+                                       DictionaryService dictionaryService,
+                                       ShardRouter router,
+                                       PlatformTransactionManager transactionManager,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${stats.unique-index.backfill-batch-size:10000}") int batchSize) {
+        this.bitmapRepository = bitmapRepository;
+        this.compactionRepository = compactionRepository;
+        this.uniqueBitmapService = uniqueBitmapService;
+        this.dictionaryService = dictionaryService;
+        this.router = router;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+
+        this.backfilledRows = Counter.builder("stats.unique-index.backfill.rows")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${stats.unique-index.backfill-interval-ms:60000}",
+            fixedDelayString = "${stats.unique-index.backfill-interval-ms:60000}")
+    public void backfill() {
+        LocalDateTime validFrom = uniqueBitmapService.getValidFrom();
+        if (!uniqueBitmapService.isEnabled() || Objects.isNull(validFrom)
+                || validFrom.equals(UniqueBitmapService.FULLY_INDEXED)) {
+            return;
+        }
+        LocalDateTime watermark = findWatermark();
+        if (Objects.nonNull(watermark) && !watermark.isBefore(validFrom)) {
+            return;
+        }
+
+        LocalDateTime latest = router.scatter(shard -> bitmapRepository.findLatestUnindexed(validFrom)).stream()
+                .filter(Objects::nonNull)
+                .max(LocalDateTime::compareTo)
+                .orElse(null);
+        if (Objects.isNull(latest) && Objects.isNull(watermark)) {
+            uniqueBitmapService.extendValidFrom(UniqueBitmapService.FULLY_INDEXED);
+            log.info("UniqueBitmapBackfillService: every raw hit is indexed");
+            return;
+        }
+
+        LocalDateTime from = Objects.isNull(latest) ? watermark : RollupGranularity.DAY.floor(latest);
+        if (Objects.nonNull(watermark) && from.isBefore(watermark)) {
+            from = watermark;
+        }
+        LocalDateTime day = from;
+        long rows = 0;
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            rows += router.callOn(shard, () -> backfillShard(day, validFrom));
+        }
+
+        // a compaction that ran meanwhile may have deleted hits before they were indexed
+        LocalDateTime compacted = findWatermark();
+        LocalDateTime bound = Objects.nonNull(compacted) && day.isBefore(compacted) ? compacted : day;
+        if (!bound.isBefore(validFrom)) {
+            log.info("UniqueBitmapBackfillService: raw hits before {} were compacted, the index stays valid from {}",
+                    compacted, validFrom);
+            return;
+        }
+        uniqueBitmapService.extendValidFrom(bound);
+        log.info("UniqueBitmapBackfillService: indexed {} raw hits of [{}, {})", rows, bound, validFrom);
+    }
+
+    /**
+     * A shard's raw hits are gone before its own watermark, so the latest one bounds the backfill.
+     */
+    private LocalDateTime findWatermark() {
+        return router.scatter(shard -> compactionRepository.findWatermark()).stream()
+                .filter(Objects::nonNull)
+                .max(LocalDateTime::compareTo)
+                .orElse(null);
+    }
+
+    /**
+     * Ip ids are resolved outside of the transaction, the same way the writer does it.
+     */
+    private long backfillShard(LocalDateTime from, LocalDateTime to) {
+        long rows = 0;
+        List<ItemStats> items;
+        do {
+            items = bitmapRepository.findUnindexed(from, to, batchSize);
+            if (items.isEmpty()) {
+                break;
+            }
+            dictionaryService.encodeIps(items);
+            List<ItemStats> batch = items;
+            transaction.executeWithoutResult(status -> {
+                bitmapRepository.updateIpIds(batch, from, to);
+                uniqueBitmapService.apply(batch);
+            });
+            uniqueBitmapService.invalidate(batch);
+            rows += items.size();
+            backfilledRows.increment(items.size());
+        } while (items.size() == batchSize);
+        return rows;
+    }
+}
@@ -0,0 +1,397 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupKey;
+import ru.practicum.statsserver.model.RollupSegment;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsKey;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.repository.StatsQueryRepository;
+import ru.practicum.statsserver.repository.UniqueBitmapRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Exact unique ip counts from one Roaring bitmap of ip ids per app, uri and day. A range query ORs the
+ * bitmaps of its whole days with the ip ids of the raw rows at the partial days and takes the cardinality.
+ * Bitmaps are stored run-optimized and read only for the keys a query touches; those of closed days are kept
+ * in memory least recently used first, up to the configured size.
+ * <p>
+ * A write batch only inserts its own small bitmaps as deltas, so writers never rewrite or lock a day bitmap;
+ * the deltas are merged into the day bitmaps in the background and reads OR in the ones not merged yet.
+ * The index is complete only for ranges starting at its valid-from bound: the first start with the index
+ * enabled sets it to the current time, and the backfill moves it back one day at a time. A server started
+ * with the index disabled writes hits without ip ids, so it drops the bound.
+ * <p>
+ * Compaction deletes raw hits but keeps the day bitmaps, so a range starting before the compaction watermark
+ * is still answered as long as its partial days before the watermark held no hits.
+ */
+@Slf4j
+@Service
+public class UniqueBitmapService {
+    /**
+     * The bound once the backfill has indexed every raw hit.
+     */
+    public static final LocalDateTime FULLY_INDEXED = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final UniqueBitmapRepository bitmapRepository;
+    private final StatsQueryRepository queryRepository;
+    private final CompactionWatermark compactionWatermark;
+    private final ShardRouter router;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final long maxCacheBytes;
+    private final long graceMinutes;
+    private final int mergeBatchSize;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter mergedDeltas;
+    private final Map<RollupKey, RoaringBitmap> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicReference<LocalDateTime> validFrom = new AtomicReference<>();
+
+    private long cacheBytes;
+
+    public UniqueBitmapService(UniqueBitmapRepository bitmapRepository,
+                               StatsQueryRepository queryRepository,
+                               CompactionWatermark compactionWatermark,
+                               ShardRouter router,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${stats.unique-index.enabled:false}") boolean enabled,
+                               @Value("${stats.unique-index.cache-max-bytes:67108864}") long maxCacheBytes,
+                               @Value("${stats.cache.grace-minutes:5}") long graceMinutes,
+                               @Value("${stats.unique-index.merge-batch-size:1000}") int mergeBatchSize) {
+        this.bitmapRepository = bitmapRepository;
+        this.queryRepository = queryRepository;
+        this.compactionWatermark = compactionWatermark;
+        this.router = router;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxCacheBytes = maxCacheBytes;
+        this.graceMinutes = graceMinutes;
+        this.mergeBatchSize = mergeBatchSize;
+
+        this.hitCounter = Counter.builder("stats.unique-index.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("stats.unique-index.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.mergedDeltas = Counter.builder("stats.unique-index.deltas.merged")
+                .register(meterRegistry);
+        Gauge.builder("stats.unique-index.cache.bytes", this, UniqueBitmapService::getCacheBytes)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the index holds every hit of a range starting at the given time.
+     */
+    public boolean covers(LocalDateTime start) {
+        LocalDateTime from = validFrom.get();
+        return enabled && Objects.nonNull(from) && !start.isBefore(from);
+    }
+
+    /**
+     * Whether the index answers the inclusive range [start, end]: it must cover the start, and the partial days
+     * read from raw rows must have had no hits before the compaction watermark, as the minute rollups tell.
+     */
+    public boolean covers(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        if (!covers(start)) {
+            return false;
+        }
+        LocalDateTime watermark = compactionWatermark.get();
+        if (Objects.isNull(watermark) || !start.isBefore(watermark)) {
+            return true;
+        }
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        LocalDateTime dayFrom = RollupGranularity.DAY.ceil(start);
+        LocalDateTime dayTo = RollupGranularity.DAY.floor(to);
+        if (!dayFrom.isBefore(dayTo)) {
+            return hasNoCompactedHits(start, to, watermark, uriFilter);
+        }
+        return hasNoCompactedHits(start, dayFrom, watermark, uriFilter)
+                && hasNoCompactedHits(dayTo, to, watermark, uriFilter);
+    }
+
+    public LocalDateTime getValidFrom() {
+        return validFrom.get();
+    }
+
+    /**
+     * Every shard must be indexed from the bound on, so it is the latest one saved by any shard.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadValidFrom() {
+        if (!enabled) {
+            router.forEachShard(shard -> bitmapRepository.deleteValidFrom());
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        router.scatter(shard -> {
+            LocalDateTime saved = bitmapRepository.findValidFrom();
+            if (Objects.isNull(saved)) {
+                bitmapRepository.saveValidFrom(now);
+                return now;
+            }
+            return saved;
+        }).stream().max(LocalDateTime::compareTo).ifPresent(validFrom::set);
+        log.info("UniqueBitmapService: index valid from {}", validFrom.get());
+    }
+
+    /**
+     * Moves the bound back once every shard is indexed from the given time on.
+     */
+    void extendValidFrom(LocalDateTime from) {
+        router.forEachShard(shard -> bitmapRepository.saveValidFrom(from));
+        validFrom.accumulateAndGet(from, (current, next) ->
+                Objects.isNull(current) || next.isBefore(current) ? next : current);
+    }
+
+    /**
+     * Inserts one delta per app, uri and day of the hits, on the shard of the current transaction.
+     */
+    public void apply(List<ItemStats> items) {
+        Map<RollupKey, RoaringBitmap> bitmaps = new TreeMap<>();
+        for (ItemStats item : items) {
+            RollupKey key = new RollupKey(item.getAppId(), item.getUriId(),
+                    RollupGranularity.DAY.floor(item.getRequestDateTime()));
+            bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(item.getIpId());
+        }
+
+        Map<RollupKey, byte[]> deltas = new TreeMap<>();
+        bitmaps.forEach((key, bitmap) -> deltas.put(key, serialize(bitmap)));
+        bitmapRepository.insertDeltas(deltas);
+    }
+
+    /**
+     * Folds the deltas into the day bitmaps. Reads see the same union before and after a merge,
+     * so the cache stays valid.
+     */
+    @Scheduled(initialDelayString = "${stats.unique-index.merge-interval-ms:10000}",
+            fixedDelayString = "${stats.unique-index.merge-interval-ms:10000}")
+    public void mergeDeltas() {
+        if (!enabled) {
+            return;
+        }
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            router.runOn(shard, () -> {
+                Integer merged;
+                do {
+                    merged = transaction.execute(status -> mergeBatch());
+                } while (Objects.nonNull(merged) && merged == mergeBatchSize);
+            });
+        }
+    }
+
+    /**
+     * Day bitmaps are updated in key order, so concurrent merges never wait on each other in a cycle.
+     */
+    private int mergeBatch() {
+        Map<RollupKey, RoaringBitmap> bitmaps = new TreeMap<>();
+        int[] rows = new int[1];
+        bitmapRepository.claimDeltas(mergeBatchSize, rs -> {
+            bitmaps.computeIfAbsent(new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                    rs.getTimestamp("bucket").toLocalDateTime()), key -> new RoaringBitmap())
+                    .or(deserialize(rs.getBytes("bitmap")));
+            rows[0]++;
+        });
+
+        bitmaps.forEach((key, bitmap) -> {
+            if (!bitmapRepository.insertIfAbsent(key, serialize(bitmap))) {
+                RoaringBitmap stored = deserialize(bitmapRepository.findForUpdate(key));
+                stored.or(bitmap);
+                bitmapRepository.update(key, serialize(stored));
+            }
+        });
+        mergedDeltas.increment(rows[0]);
+        return rows[0];
+    }
+
+    /**
+     * Drops the cached bitmaps of the days the hits fall on. Called after the hits are committed.
+     */
+    public void invalidate(List<ItemStats> items) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime horizon = closedHorizon();
+        List<RollupKey> late = items.stream()
+                .filter(item -> item.getRequestDateTime().isBefore(horizon))
+                .map(item -> new RollupKey(item.getAppId(), item.getUriId(),
+                        RollupGranularity.DAY.floor(item.getRequestDateTime())))
+                .distinct()
+                .collect(Collectors.toList());
+        if (late.isEmpty()) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        synchronized (this) {
+            for (RollupKey key : late) {
+                RoaringBitmap removed = cache.remove(key);
+                if (Objects.nonNull(removed)) {
+                    cacheBytes -= removed.serializedSizeInBytes();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the same counts as count(distinct ip) over the inclusive range [start, end], sorted by count.
+     */
+    public List<StatsCount> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        LocalDateTime dayFrom = RollupGranularity.DAY.ceil(start);
+        LocalDateTime dayTo = RollupGranularity.DAY.floor(to);
+        Map<StatsKey, RoaringBitmap> ips = new HashMap<>();
+
+        if (dayFrom.isBefore(dayTo)) {
+            addDays(ips, dayFrom, dayTo, uriFilter);
+            addRawIpIds(ips, start, dayFrom, uriFilter);
+            addRawIpIds(ips, dayTo, to, uriFilter);
+        } else {
+            addRawIpIds(ips, start, to, uriFilter);
+        }
+
+        return ips.entrySet().stream()
+                .map(entry -> new StatsCount(entry.getKey().getAppId(), entry.getKey().getUriId(),
+                        entry.getValue().getLongCardinality()))
+                .sorted(StatsCount.BY_HITS_DESC)
+                .collect(Collectors.toList());
+    }
+
+    private void addDays(Map<StatsKey, RoaringBitmap> ips, LocalDateTime from, LocalDateTime to,
+                         UriFilter uriFilter) {
+        LocalDateTime horizon = closedHorizon();
+        List<RollupKey> keys = bitmapRepository.findKeys(from, to, uriFilter);
+        List<RollupKey> missing = new ArrayList<>();
+        synchronized (this) {
+            for (RollupKey key : keys) {
+                RoaringBitmap cached = cache.get(key);
+                if (Objects.isNull(cached)) {
+                    missing.add(key);
+                } else {
+                    or(ips, key, cached);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            hitCounter.increment();
+            return;
+        }
+        missCounter.increment();
+
+        long loadGeneration = generation.get();
+        Map<RollupKey, RoaringBitmap> loaded = new HashMap<>();
+        bitmapRepository.findBitmaps(missing, rs -> loaded.computeIfAbsent(new RollupKey(rs.getInt("app_id"),
+                rs.getInt("uri_id"), rs.getTimestamp("bucket").toLocalDateTime()), key -> new RoaringBitmap())
+                .or(deserialize(rs.getBytes("bitmap"))));
+        loaded.forEach((key, bitmap) -> or(ips, key, bitmap));
+
+        synchronized (this) {
+            // a late hit committed while loading may be missing from the bitmaps, so they are not kept
+            if (loadGeneration != generation.get()) {
+                return;
+            }
+            loaded.forEach((key, bitmap) -> {
+                if (!key.getBucket().plusDays(1).isAfter(horizon) && !cache.containsKey(key)) {
+                    cache.put(key, bitmap);
+                    cacheBytes += bitmap.serializedSizeInBytes();
+                }
+            });
+            evict();
+        }
+    }
+
+    private void addRawIpIds(Map<StatsKey, RoaringBitmap> ips, LocalDateTime from, LocalDateTime to,
+                             UriFilter uriFilter) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        bitmapRepository.findRawIpIds(from, to, uriFilter, rs -> ips
+                .computeIfAbsent(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new RoaringBitmap())
+                .add(rs.getInt("ip_id")));
+    }
+
+    private boolean hasNoCompactedHits(LocalDateTime from, LocalDateTime to, LocalDateTime watermark,
+                                       UriFilter uriFilter) {
+        LocalDateTime compactedTo = to.isBefore(watermark) ? to : watermark;
+        if (!from.isBefore(compactedTo)) {
+            return true;
+        }
+        RollupSegment segment = new RollupSegment(RollupGranularity.MINUTE, RollupGranularity.MINUTE.floor(from),
+                RollupGranularity.MINUTE.ceil(compactedTo));
+        return queryRepository.findHits(List.of(segment), uriFilter, null, 1).isEmpty();
+    }
+
+    private static void or(Map<StatsKey, RoaringBitmap> ips, RollupKey key, RoaringBitmap bitmap) {
+        ips.computeIfAbsent(new StatsKey(key.getAppId(), key.getUriId()), k -> new RoaringBitmap()).or(bitmap);
+    }
+
+    private void evict() {
+        Iterator<RoaringBitmap> it = cache.values().iterator();
+        while (cacheBytes > maxCacheBytes && it.hasNext()) {
+            cacheBytes -= it.next().serializedSizeInBytes();
+            it.remove();
+        }
+    }
+
+    private synchronized long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    private LocalDateTime closedHorizon() {
+        return LocalDateTime.now().minusMinutes(graceMinutes);
+    }
+
+    private static byte[] serialize(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    private static RoaringBitmap deserialize(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+}
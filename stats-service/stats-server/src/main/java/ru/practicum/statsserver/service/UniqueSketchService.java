@@ -0,0 +1,202 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.ItemStats;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.RollupKey;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.StatsKey;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.repository.UniqueSketchRepository;
+import ru.practicum.statsserver.shard.ShardRouter;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+import ru.practicum.statsserver.sketch.MurmurHash3;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Approximate unique ip counts from HyperLogLog sketches per app, uri and day. A write batch only inserts
+ * its own small sparse sketches as deltas, so writers never rewrite or lock a day sketch; the deltas are
+ * merged into the day sketches in the background and reads merge in the ones not merged yet.
+ */
+@Service
+public class UniqueSketchService {
+    private final UniqueSketchRepository sketchRepository;
+    private final CompactionWatermark watermark;
+    private final ShardRouter router;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final int precision;
+    private final int mergeBatchSize;
+    private final Counter mergedDeltas;
+
+    public UniqueSketchService(UniqueSketchRepository sketchRepository,
+                               CompactionWatermark watermark,
+                               ShardRouter router,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${stats.sketch.enabled:true}") boolean enabled,
+                               @Value("${stats.sketch.precision:12}") int precision,
+                               @Value("${stats.sketch.merge-batch-size:1000}") int mergeBatchSize) {
+        this.sketchRepository = sketchRepository;
+        this.watermark = watermark;
+        this.router = router;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.precision = precision;
+        this.mergeBatchSize = mergeBatchSize;
+
+        this.mergedDeltas = Counter.builder("stats.sketch.deltas.merged")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getErrorBound() {
+        return HyperLogLog.relativeError(precision);
+    }
+
+    public void apply(List<ItemStats> items) {
+        Map<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+        for (ItemStats item : items) {
+            RollupKey key = new RollupKey(item.getAppId(), item.getUriId(),
+                    RollupGranularity.DAY.floor(item.getRequestDateTime()));
+            sketches.computeIfAbsent(key, k -> newSketch())
+                    .add(MurmurHash3.hash64(item.getIp()));
+        }
+
+        Map<RollupKey, byte[]> deltas = new TreeMap<>();
+        sketches.forEach((key, sketch) -> deltas.put(key, sketch.toBytes()));
+        sketchRepository.insertDeltas(deltas);
+    }
+
+    /**
+     * Folds the deltas into the day sketches. Reads merge both, so they see the same union before
+     * and after a merge.
+     */
+    @Scheduled(initialDelayString = "${stats.sketch.merge-interval-ms:10000}",
+            fixedDelayString = "${stats.sketch.merge-interval-ms:10000}")
+    public void mergeDeltas() {
+        if (!enabled) {
+            return;
+        }
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            router.runOn(shard, () -> {
+                Integer merged;
+                do {
+                    merged = transaction.execute(status -> mergeBatch());
+                } while (Objects.nonNull(merged) && merged == mergeBatchSize);
+            });
+        }
+    }
+
+    public HyperLogLog newSketch() {
+        return new HyperLogLog(precision);
+    }
+
+    /**
+     * Merges the sketch into the stored one of the same key; must run in a transaction.
+     */
+    public void merge(RollupGranularity granularity, RollupKey key, HyperLogLog sketch) {
+        if (!sketchRepository.insertIfAbsent(granularity, key, sketch.toBytes())) {
+            HyperLogLog stored = HyperLogLog.fromBytes(sketchRepository.findForUpdate(granularity, key));
+            stored.merge(sketch);
+            sketchRepository.update(granularity, key, stored.toBytes());
+        }
+    }
+
+    /**
+     * Day sketches are updated in key order, so concurrent merges never wait on each other in a cycle.
+     */
+    private int mergeBatch() {
+        Map<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+        int[] rows = new int[1];
+        sketchRepository.claimDeltas(mergeBatchSize, rs -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+            sketches.merge(new RollupKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                    rs.getTimestamp("bucket").toLocalDateTime()), sketch, (left, right) -> {
+                left.merge(right);
+                return left;
+            });
+            rows[0]++;
+        });
+
+        sketches.forEach((key, sketch) -> merge(RollupGranularity.DAY, key, sketch));
+        mergedDeltas.increment(rows[0]);
+        return rows[0];
+    }
+
+    /**
+     * Unions the stored day sketches of every whole day in [start, end] and adds
+     * the raw ips of the partial days at both edges. Before the compaction watermark the
+     * hour sketches of every hour touched by the range are used instead.
+     */
+    public List<StatsCount> getStats(LocalDateTime start, LocalDateTime end, UriFilter uriFilter) {
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        Map<StatsKey, HyperLogLog> sketches = new HashMap<>();
+
+        LocalDateTime from = start;
+        if (watermark.covers(start)) {
+            LocalDateTime compactedTo = to.isBefore(watermark.get()) ? to : watermark.get();
+            addSketches(sketches, RollupGranularity.HOUR, RollupGranularity.HOUR.floor(start),
+                    RollupGranularity.HOUR.ceil(compactedTo), uriFilter);
+            from = compactedTo;
+        }
+
+        LocalDateTime dayFrom = RollupGranularity.DAY.ceil(from);
+        LocalDateTime dayTo = RollupGranularity.DAY.floor(to);
+        if (enabled && dayFrom.isBefore(dayTo)) {
+            addSketches(sketches, RollupGranularity.DAY, dayFrom, dayTo, uriFilter);
+            addRawIps(sketches, from, dayFrom, uriFilter);
+            addRawIps(sketches, dayTo, to, uriFilter);
+        } else {
+            addRawIps(sketches, from, to, uriFilter);
+        }
+
+        return sketches.entrySet().stream()
+                .map(entry -> new StatsCount(entry.getKey().getAppId(), entry.getKey().getUriId(),
+                        entry.getValue().cardinality()))
+                .sorted(StatsCount.BY_HITS_DESC)
+                .collect(Collectors.toList());
+    }
+
+    private void addSketches(Map<StatsKey, HyperLogLog> sketches, RollupGranularity granularity,
+                             LocalDateTime from, LocalDateTime to, UriFilter uriFilter) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        sketchRepository.findSketches(granularity, from, to, uriFilter, rs -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+            sketches.merge(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")), sketch, (left, right) -> {
+                left.merge(right);
+                return left;
+            });
+        });
+    }
+
+    private void addRawIps(Map<StatsKey, HyperLogLog> sketches, LocalDateTime from, LocalDateTime to,
+                           UriFilter uriFilter) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        sketchRepository.findRawIps(from, to, uriFilter, rs -> sketches
+                .computeIfAbsent(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                        key -> newSketch())
+                .add(MurmurHash3.hash64(rs.getBytes("ip"))));
+    }
+}
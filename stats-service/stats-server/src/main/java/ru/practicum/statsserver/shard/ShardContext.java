@@ -0,0 +1,24 @@
+package ru.practicum.statsserver.shard;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Holds the shard the current thread works with; the routing data source reads it
+ * whenever a connection is taken, so it must be set before a transaction begins.
+ */
+@UtilityClass
+public class ShardContext {
+    private final ThreadLocal<Integer> currentShard = new ThreadLocal<>();
+
+    public Integer get() {
+        return currentShard.get();
+    }
+
+    public void set(Integer shard) {
+        if (shard == null) {
+            currentShard.remove();
+        } else {
+            currentShard.set(shard);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.practicum.statsserver.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.sketch.MurmurHash3;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Maps uris to shards and runs work against one or all of them. With a single data source
+ * everything runs inline on the calling thread and the shard context is never touched.
+ */
+@Slf4j
+@Component
+public class ShardRouter {
+    private final int shardCount;
+    private final DataSource dictionaryDataSource;
+    private final ExecutorService executor;
+
+    public ShardRouter(DataSource dataSource) {
+        if (dataSource instanceof ShardRoutingDataSource) {
+            List<DataSource> shards = ((ShardRoutingDataSource) dataSource).getShards();
+            this.shardCount = shards.size();
+            this.dictionaryDataSource = shards.get(0);
+            AtomicInteger threads = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(shardCount, task -> {
+                Thread thread = new Thread(task, "stats-shard-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.info("ShardRouter: routing stats across {} shards", shardCount);
+        } else {
+            this.shardCount = 1;
+            this.dictionaryDataSource = dataSource;
+            this.executor = null;
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Dictionaries live on shard 0 only, which keeps app and uri ids global across shards.
+     */
+    public DataSource getDictionaryDataSource() {
+        return dictionaryDataSource;
+    }
+
+    public int shardOf(String uri) {
+        return shardCount == 1 ? 0 : (int) Math.floorMod(MurmurHash3.hash64(uri), (long) shardCount);
+    }
+
+    public <T> T callOn(int shard, Supplier<T> action) {
+        if (shardCount == 1) {
+            return action.get();
+        }
+        Integer previous = ShardContext.get();
+        ShardContext.set(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    public void runOn(int shard, Runnable action) {
+        callOn(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action against every shard in parallel and returns the results in shard order.
+     */
+    public <T> List<T> scatter(IntFunction<T> action) {
+        if (shardCount == 1) {
+            return Collections.singletonList(action.apply(0));
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(executor.submit(() -> callOn(target, () -> action.apply(target))));
+        }
+
+        List<T> results = new ArrayList<>(shardCount);
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    public void forEachShard(IntConsumer action) {
+        scatter(shard -> {
+            action.accept(shard);
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+    }
+}
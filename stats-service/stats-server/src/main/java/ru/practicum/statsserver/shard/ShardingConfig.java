@@ -0,0 +1,63 @@
+package ru.practicum.statsserver.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+
+import javax.sql.DataSource;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the single auto-configured data source with one pool per url in stats.shard.urls.
+ * Without that property the application keeps running on spring.datasource alone.
+ */
+@Configuration
+@ConditionalOnExpression("'${stats.shard.urls:}' != ''")
+public class ShardingConfig {
+
+    @Bean
+    public ShardRoutingDataSource dataSource(DataSourceProperties properties,
+                                             @Value("${stats.shard.urls}") List<String> urls) {
+        List<DataSource> shards = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource shard = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(i).trim())
+                    .build();
+            shard.setPoolName("stats-shard-" + i);
+            shards.add(shard);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /**
+     * Runs the schema scripts against every shard rather than only the default one.
+     */
+    @Bean
+    public SqlDataSourceScriptDatabaseInitializer dataSourceScriptDatabaseInitializer(
+            ShardRoutingDataSource dataSource, SqlInitializationProperties properties) {
+        int shardCount = dataSource.getShards().size();
+        return new SqlDataSourceScriptDatabaseInitializer(dataSource, properties) {
+            @Override
+            protected void runScripts(List<Resource> resources, boolean continueOnError, String separator,
+                                      Charset encoding) {
+                for (int shard = 0; shard < shardCount; shard++) {
+                    ShardContext.set(shard);
+                    try {
+                        super.runScripts(resources, continueOnError, separator, encoding);
+                    } finally {
+                        ShardContext.set(null);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package ru.practicum.statsserver.sketch;
+
+/**
+ * Count-Min sketch over 64-bit hashes. An estimate never undercounts and overcounts by at most
+ * e / width of the total with probability 1 - e^-depth. Rows are probed by double hashing like
+ * {@link BloomFilter}. Sketches of the same shape can be merged. Not thread-safe.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] counts;
+
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Count-Min sketch needs a positive width and depth");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counts = new long[width * depth];
+    }
+
+    public void add(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < depth; i++) {
+            counts[i * width + Math.floorMod(h1 + (i + 1) * h2, width)]++;
+        }
+    }
+
+    public long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counts[i * width + Math.floorMod(h1 + (i + 1) * h2, width)]);
+        }
+        return estimate;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge Count-Min sketches of different shapes");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    public long sizeInBytes() {
+        return counts.length * 8L;
+    }
+}
@@ -0,0 +1,127 @@
+package ru.practicum.statsserver.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dense HyperLogLog counter: 2^precision one-byte registers, serialized with the precision as the first byte.
+ * Sketches with the same precision can be merged, which is what makes per-bucket storage possible.
+ * A sketch with few registers set is serialized sparse instead, as (register, rank) pairs after the
+ * precision byte with its high bit set, so that a sketch of a handful of ips takes a few bytes.
+ */
+public class HyperLogLog {
+    private static final int SPARSE = 0x80;
+    private static final int SPARSE_ENTRY_SIZE = 4;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if ((bytes[0] & SPARSE) == 0) {
+            return new HyperLogLog(bytes[0], Arrays.copyOfRange(bytes, 1, bytes.length));
+        }
+        HyperLogLog sketch = new HyperLogLog(bytes[0] & (SPARSE - 1));
+        ByteBuffer entries = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        while (entries.hasRemaining()) {
+            int entry = entries.getInt();
+            sketch.registers[entry >>> 8] = (byte) entry;
+        }
+        return sketch;
+    }
+
+    public byte[] toBytes() {
+        int used = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                used++;
+            }
+        }
+        if (used * SPARSE_ENTRY_SIZE < registers.length) {
+            ByteBuffer bytes = ByteBuffer.allocate(used * SPARSE_ENTRY_SIZE + 1);
+            bytes.put((byte) (precision | SPARSE));
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    bytes.putInt(i << 8 | registers[i]);
+                }
+            }
+            return bytes.array();
+        }
+
+        byte[] bytes = new byte[registers.length + 1];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 1, registers.length);
+        return bytes;
+    }
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public double relativeError() {
+        return relativeError(precision);
+    }
+
+    public static double relativeError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
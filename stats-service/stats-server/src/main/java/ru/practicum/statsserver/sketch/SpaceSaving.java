@@ -0,0 +1,63 @@
+package ru.practicum.statsserver.sketch;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving summary of the most frequent keys in a stream. At most capacity keys are monitored;
+ * a new key replaces the least counted one and inherits its count, so every key seen more often
+ * than total / capacity times is guaranteed to be monitored. Not thread-safe.
+ */
+public class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private final TreeSet<Counter<K>> byCount = new TreeSet<>(Comparator
+            .comparingLong((Counter<K> counter) -> counter.count)
+            .thenComparingLong(counter -> counter.sequence));
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Space-Saving summary needs a positive capacity");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void offer(K key) {
+        Counter<K> counter = counters.get(key);
+        if (counter == null) {
+            long count = 0;
+            if (counters.size() == capacity) {
+                Counter<K> evicted = byCount.pollFirst();
+                counters.remove(evicted.key);
+                count = evicted.count;
+            }
+            counter = new Counter<>(key, count);
+            counters.put(key, counter);
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count++;
+        counter.sequence = sequence++;
+        byCount.add(counter);
+    }
+
+    public Set<K> keys() {
+        return counters.keySet();
+    }
+
+    private static final class Counter<K> {
+        private final K key;
+        private long count;
+        private long sequence;
+
+        private Counter(K key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
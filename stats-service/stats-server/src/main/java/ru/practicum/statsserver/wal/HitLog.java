@@ -0,0 +1,224 @@
+package ru.practicum.statsserver.wal;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.model.ItemStats;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of accepted hits that have not reached the database yet.
+ * Hits are appended before they are acknowledged, the applied position is checkpointed
+ * after every committed flush, and whatever lies past the checkpoint is replayed on startup.
+ * Delivery is at least once: hits of a flush that committed right before a crash are replayed again.
+ */
+@Slf4j
+@Component
+public class HitLog {
+    private static final String CHECKPOINT = "checkpoint";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final AtomicInteger segments = new AtomicInteger();
+
+    private HitLogSegment current;
+
+    public HitLog(MeterRegistry meterRegistry,
+                  @Value("${stats.ingest.wal.enabled:false}") boolean enabled,
+                  @Value("${stats.ingest.wal.dir:./data/wal}") String directory,
+                  @Value("${stats.ingest.wal.segment-size:67108864}") int segmentSize,
+                  @Value("${stats.ingest.wal.fsync:false}") boolean fsync) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+
+        Gauge.builder("stats.ingest.wal.segments", segments, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Applies every hit logged past the last checkpoint and opens a fresh segment for new appends.
+     * A torn record at the tail of a segment ends the replay of that segment.
+     */
+    public synchronized void replay(Consumer<List<ItemStats>> applier, int batchSize) {
+        try {
+            Files.createDirectories(directory);
+            HitLogPosition checkpoint = readCheckpoint();
+            List<Path> files = listSegments();
+            long lastId = 0;
+            AtomicInteger replayed = new AtomicInteger();
+
+            for (Path file : files) {
+                long id = HitLogSegment.parseId(file);
+                lastId = Math.max(lastId, id);
+                if (id < checkpoint.getSegmentId()) {
+                    continue;
+                }
+                HitLogSegment segment = HitLogSegment.open(file);
+                int from = id == checkpoint.getSegmentId() ? checkpoint.getOffset() : 0;
+                List<ItemStats> batch = new ArrayList<>(batchSize);
+                int end = segment.read(from, payload -> {
+                    batch.add(decode(payload));
+                    replayed.incrementAndGet();
+                    if (batch.size() >= batchSize) {
+                        applier.accept(batch);
+                        batch.clear();
+                    }
+                });
+                if (!batch.isEmpty()) {
+                    applier.accept(batch);
+                }
+                segment.close();
+                writeCheckpoint(new HitLogPosition(id, end));
+            }
+
+            current = HitLogSegment.create(directory, lastId + 1, segmentSize);
+            writeCheckpoint(new HitLogPosition(current.getId(), 0));
+            deleteSegmentsBefore(current.getId());
+            log.info("HitLog: replayed {} hits, appending to segment {} in {}", replayed, current.getId(), directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay hit log in " + directory, e);
+        }
+    }
+
+    /**
+     * Appends the hits and returns the position right after the last of them.
+     */
+    public synchronized HitLogPosition append(List<ItemStats> items) {
+        try {
+            for (ItemStats item : items) {
+                byte[] payload = encode(item);
+                if (!current.append(payload)) {
+                    current.force();
+                    HitLogSegment retired = current;
+                    current = HitLogSegment.create(directory, retired.getId() + 1, segmentSize);
+                    retired.close();
+                    segments.incrementAndGet();
+                    if (!current.append(payload)) {
+                        throw new IllegalStateException("Hit does not fit into an empty log segment");
+                    }
+                }
+            }
+            if (fsync) {
+                current.force();
+            }
+            return new HitLogPosition(current.getId(), current.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to hit log", e);
+        }
+    }
+
+    /**
+     * Records that everything up to the position is in the database and drops segments left behind it.
+     */
+    public synchronized void markApplied(HitLogPosition position) {
+        try {
+            writeCheckpoint(position);
+            deleteSegmentsBefore(position.getSegmentId());
+        } catch (IOException e) {
+            log.warn("HitLog: failed to checkpoint position {}", position, e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (current != null) {
+            current.force();
+            current.close();
+            current = null;
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(HitLogSegment::isSegment)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void deleteSegmentsBefore(long segmentId) throws IOException {
+        int left = 0;
+        for (Path file : listSegments()) {
+            if (HitLogSegment.parseId(file) < segmentId) {
+                Files.deleteIfExists(file);
+            } else {
+                left++;
+            }
+        }
+        segments.set(left);
+    }
+
+    private HitLogPosition readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+        if (!Files.exists(file)) {
+            return new HitLogPosition(0, 0);
+        }
+        String[] parts = Files.readString(file).trim().split(":");
+        return new HitLogPosition(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private void writeCheckpoint(HitLogPosition position) throws IOException {
+        Path tmp = directory.resolve(CHECKPOINT + ".tmp");
+        Files.writeString(tmp, position.getSegmentId() + ":" + position.getOffset());
+        Files.move(tmp, directory.resolve(CHECKPOINT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(ItemStats item) {
+        byte[] app = item.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = item.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = item.getIp();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + app.length + 4 + uri.length + 1 + ip.length + 12);
+        buffer.putInt(app.length).put(app);
+        buffer.putInt(uri.length).put(uri);
+        buffer.put((byte) ip.length).put(ip);
+        buffer.putLong(item.getRequestDateTime().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(item.getRequestDateTime().getNano());
+        return buffer.array();
+    }
+
+    private static ItemStats decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        byte[] app = new byte[buffer.getInt()];
+        buffer.get(app);
+        byte[] uri = new byte[buffer.getInt()];
+        buffer.get(uri);
+        byte[] ip = new byte[buffer.get()];
+        buffer.get(ip);
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        return ItemStats.builder()
+                .app(new String(app, StandardCharsets.UTF_8))
+                .uri(new String(uri, StandardCharsets.UTF_8))
+                .ip(ip)
+                .requestDateTime(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC))
+                .build();
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.statsserver.wal;
+
+import lombok.Value;
+
+@Value
+public class HitLogPosition {
+    long segmentId;
+    int offset;
+}
@@ -0,0 +1,153 @@
+package ru.practicum.statsserver.wal;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Fixed-size memory-mapped file of records laid out as [length][crc32c][payload].
+ * The file is zero-filled on creation, so a zero length marks the end of written data.
+ */
+public class HitLogSegment {
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".wal";
+    private static final Object UNSAFE = findUnsafe();
+    private static final Method UNMAPPER = UNSAFE == null ? null : findUnmapper();
+
+    @Getter
+    private final long id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private HitLogSegment(long id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    public static HitLogSegment create(Path directory, long id, int size) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new HitLogSegment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    public static HitLogSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new HitLogSegment(parseId(path), path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static boolean isSegment(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    public static long parseId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long id) {
+        return String.format("%020d%s", id, SUFFIX);
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    /**
+     * Returns false without writing anything when the record does not fit into the rest of the segment.
+     */
+    public boolean append(byte[] payload) {
+        if (buffer.remaining() < HEADER_SIZE + payload.length) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        // the length goes last so a torn record is never seen as complete
+        buffer.putInt(start, payload.length);
+        return true;
+    }
+
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Reads records starting at the given offset until the end marker or the first damaged record
+     * and returns the offset right after the last valid one.
+     */
+    public int read(int fromOffset, Consumer<byte[]> consumer) {
+        int offset = fromOffset;
+        while (offset + HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.limit()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ((ByteBuffer) buffer.duplicate().position(offset + HEADER_SIZE)).get(payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            consumer.accept(payload);
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    /**
+     * Unmaps the segment right away instead of whenever the buffer is garbage collected, so a retired
+     * segment does not keep its pages and its file mapped after the file is deleted. The segment must not
+     * be used afterwards.
+     */
+    public void close() {
+        if (UNMAPPER == null) {
+            return;
+        }
+        try {
+            UNMAPPER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to unmap hit log segment " + path, e);
+        }
+    }
+
+    /**
+     * Unsafe.invokeCleaner is the only way to unmap a buffer on Java 11; without it segments are
+     * unmapped on garbage collection as before.
+     */
+    private static Method findUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            return unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Object findUnsafe() {
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,155 @@
-DROP TABLE IF EXISTS stats;
+CREATE TABLE IF NOT EXISTS stats_apps
+(
+    id    INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    value VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_stats_apps PRIMARY KEY (id),
+    CONSTRAINT uq_stats_apps_value UNIQUE (value)
+);
+
+CREATE TABLE IF NOT EXISTS stats_uris
+(
+    id    INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    value VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_stats_uris PRIMARY KEY (id),
+    CONSTRAINT uq_stats_uris_value UNIQUE (value)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_uris_value_pattern ON stats_uris (value text_pattern_ops);
+
+CREATE TABLE IF NOT EXISTS stats_ips
+(
+    id    INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    value VARCHAR(45)                              NOT NULL,
+    CONSTRAINT pk_stats_ips PRIMARY KEY (id),
+    CONSTRAINT uq_stats_ips_value UNIQUE (value)
+);
 
 CREATE TABLE IF NOT EXISTS stats
 (
     id                BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-    app               VARCHAR(255)                            NOT NULL,
-    uri               VARCHAR(255)                            NOT NULL,
-    ip                VARCHAR(32)                             NOT NULL,
+    app_id            INTEGER                                 NOT NULL,
+    uri_id            INTEGER                                 NOT NULL,
+    ip                BYTEA                                   NOT NULL,
+    ip_id             INTEGER,
     request_date_time TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
-    CONSTRAINT pk_stats PRIMARY KEY (id)
-);
\ No newline at end of file
+    CONSTRAINT pk_stats PRIMARY KEY (id, request_date_time)
+) PARTITION BY RANGE (request_date_time);
+
+CREATE TABLE IF NOT EXISTS stats_default PARTITION OF stats DEFAULT;
+
+CREATE INDEX IF NOT EXISTS ix_stats_request_date_time ON stats USING BRIN (request_date_time);
+CREATE INDEX IF NOT EXISTS ix_stats_uri_id_request_date_time ON stats (uri_id, request_date_time);
+
+CREATE TABLE IF NOT EXISTS stats_ingest_batch
+(
+    id      VARCHAR(64)                 NOT NULL,
+    hits    INTEGER                     NOT NULL,
+    created TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    CONSTRAINT pk_stats_ingest_batch PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_ingest_batch_created ON stats_ingest_batch (created);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_minute
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    CONSTRAINT pk_stats_rollup_minute PRIMARY KEY (uri_id, app_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_minute_bucket ON stats_rollup_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_hour
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    CONSTRAINT pk_stats_rollup_hour PRIMARY KEY (uri_id, app_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_hour_bucket ON stats_rollup_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_day
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    CONSTRAINT pk_stats_rollup_day PRIMARY KEY (uri_id, app_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_rollup_day_bucket ON stats_rollup_day (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_hll_day
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA                       NOT NULL,
+    CONSTRAINT pk_stats_hll_day PRIMARY KEY (uri_id, app_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_hll_day_bucket ON stats_hll_day (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_hll_day_delta
+(
+    id     BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app_id INTEGER                                 NOT NULL,
+    uri_id INTEGER                                 NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
+    sketch BYTEA                                   NOT NULL,
+    CONSTRAINT pk_stats_hll_day_delta PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_hll_day_delta_key ON stats_hll_day_delta (uri_id, app_id, bucket);
+
+CREATE TABLE IF NOT EXISTS stats_ip_bitmap_day
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    bitmap BYTEA                       NOT NULL,
+    CONSTRAINT pk_stats_ip_bitmap_day PRIMARY KEY (uri_id, app_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_ip_bitmap_day_bucket ON stats_ip_bitmap_day (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_ip_bitmap_delta
+(
+    id     BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app_id INTEGER                                 NOT NULL,
+    uri_id INTEGER                                 NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
+    bitmap BYTEA                                   NOT NULL,
+    CONSTRAINT pk_stats_ip_bitmap_delta PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_ip_bitmap_delta_key ON stats_ip_bitmap_delta (uri_id, app_id, bucket);
+
+CREATE TABLE IF NOT EXISTS stats_unique_index
+(
+    id         INTEGER                     NOT NULL,
+    valid_from TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    CONSTRAINT pk_stats_unique_index PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_hll_hour
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA                       NOT NULL,
+    CONSTRAINT pk_stats_hll_hour PRIMARY KEY (uri_id, app_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS ix_stats_hll_hour_bucket ON stats_hll_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_compaction
+(
+    id               INTEGER                     NOT NULL,
+    compacted_before TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    CONSTRAINT pk_stats_compaction PRIMARY KEY (id)
+);
@@ -0,0 +1,102 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The same hits written to a single database and to two shards must give the same stats.
+ */
+class ShardedStatsTest {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime FIRST_HIT = LocalDateTime.of(2022, 9, 5, 0, 0);
+    private static final List<String> RANGES = List.of(
+            "start=2000-01-01 00:00:00&end=2030-01-01 00:00:00",
+            "start=2022-09-05 12:30:10&end=2022-09-07 15:30:00",
+            "start=2022-09-06 00:00:00&end=2022-09-06 23:59:59",
+            "start=2022-09-06 10:15:00&end=2022-09-06 10:44:59");
+
+    private static final RestTemplate rest = new RestTemplate();
+    private static ConfigurableApplicationContext single;
+    private static ConfigurableApplicationContext sharded;
+
+    @BeforeAll
+    static void startServers() {
+        single = TestServers.start(EmbeddedDatabases.create("single"));
+        sharded = TestServers.start(EmbeddedDatabases.create("shard"),
+                "stats.shard.urls=" + EmbeddedDatabases.create("shard") + "," + EmbeddedDatabases.create("shard"));
+
+        List<HitDto> hits = hits();
+        rest.postForObject(TestServers.baseUrl(single) + "/hits", hits, Object.class);
+        rest.postForObject(TestServers.baseUrl(sharded) + "/hits", hits, Object.class);
+    }
+
+    @AfterAll
+    static void stopServers() {
+        sharded.close();
+        single.close();
+    }
+
+    @Test
+    void hitsMatchSingleDatabase() {
+        for (String range : RANGES) {
+            assertSameStats(range, "");
+            assertSameStats(range, "&uris=/events/1,/events/7,/users/3");
+        }
+    }
+
+    @Test
+    void uniqueHitsMatchSingleDatabase() {
+        for (String range : RANGES) {
+            assertSameStats(range, "&unique=true");
+            assertSameStats(range, "&unique=true&uris=/events/1,/events/7,/users/3");
+        }
+    }
+
+    private static void assertSameStats(String range, String query) {
+        String path = "/stats?" + range + query;
+        List<String> expected = stats(single, path);
+        if (range.equals(RANGES.get(0))) {
+            assertFalse(expected.isEmpty(), path);
+        }
+        assertEquals(expected, stats(sharded, path), path);
+    }
+
+    private static List<String> stats(ConfigurableApplicationContext context, String path) {
+        ViewStatsDto[] stats = rest.getForObject(TestServers.baseUrl(context) + path, ViewStatsDto[].class);
+        return Arrays.stream(stats)
+                .map(dto -> dto.getApp() + " " + dto.getUri() + " " + dto.getHits())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Hits of several apps and uris over four days, with every ip seen on several uris and days.
+     */
+    private static List<HitDto> hits() {
+        List<HitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            hits.add(HitDto.builder()
+                    .app(i % 5 == 0 ? "other" : "ewm")
+                    .uri(i % 4 == 0 ? "/users/" + i % 7 : "/events/" + i % 11)
+                    .ip("10.0." + i % 3 + "." + i % 97)
+                    .timestamp(FIRST_HIT.plusMinutes(i * 2L).plusSeconds(i % 60).format(FORMATTER))
+                    .build());
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.statsserver;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts stats servers on a random port against databases of {@link EmbeddedDatabases}.
+ */
+final class TestServers {
+    private TestServers() {
+    }
+
+    /**
+     * Starts a server on the given database; further properties are given as name=value.
+     */
+    static ConfigurableApplicationContext start(String url, String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + url,
+                "--spring.datasource.username=postgres"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(StatServerApplication.class).run(args.toArray(String[]::new));
+    }
+
+    static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+}
@@ -0,0 +1,258 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsserver.exception.NoValidParameterRequest;
+import ru.practicum.statsserver.model.RollupGranularity;
+import ru.practicum.statsserver.model.StatsCount;
+import ru.practicum.statsserver.model.UriFilter;
+import ru.practicum.statsserver.repository.StatsQueryRepository;
+import ru.practicum.statsserver.service.CompactionService;
+import ru.practicum.statsserver.service.CompactionWatermark;
+import ru.practicum.statsserver.service.DictionaryService;
+import ru.practicum.statsserver.service.StatsService;
+import ru.practicum.statsserver.service.UniqueBitmapBackfillService;
+import ru.practicum.statsserver.service.UniqueBitmapService;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exact unique counts of the bitmap index must equal count(distinct ip) over the raw hits.
+ */
+class UniqueBitmapTest {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String INDEX_ENABLED = "stats.unique-index.enabled=true";
+    private static final String INDEX_DISABLED = "stats.unique-index.enabled=false";
+    // the tests run merges, backfills and compactions themselves
+    private static final String[] MANUAL_JOBS = {
+            "stats.unique-index.merge-interval-ms=3600000",
+            "stats.unique-index.backfill-interval-ms=3600000",
+            "stats.compaction.enabled=true",
+            "stats.compaction.older-than-days=5",
+            "stats.compaction.check-interval-ms=3600000"};
+    private static final List<String> URIS = List.of("/events/1", "/events/7", "/users/3");
+
+    @Test
+    void bitmapsMatchRawHitsBeforeAndAfterMerge() {
+        LocalDateTime base = LocalDateTime.of(2022, 9, 5, 0, 0);
+        try (ConfigurableApplicationContext context = start(EmbeddedDatabases.create("bitmap"), INDEX_ENABLED)) {
+            context.getBean(StatsService.class).saveRecords(hits(base), null);
+
+            assertTrue(count(context, "stats_ip_bitmap_delta") > 0);
+            assertBitmapsMatchRawHits(context, ranges(base));
+            context.getBean(UniqueBitmapService.class).mergeDeltas();
+            assertEquals(0, count(context, "stats_ip_bitmap_delta"));
+            assertBitmapsMatchRawHits(context, ranges(base));
+        }
+    }
+
+    @Test
+    void backfillIndexesHitsWrittenBeforeTheIndex() {
+        LocalDateTime base = LocalDateTime.of(2022, 9, 5, 0, 0);
+        String url = EmbeddedDatabases.create("backfill");
+        try (ConfigurableApplicationContext context = start(url, INDEX_DISABLED)) {
+            context.getBean(StatsService.class).saveRecords(hits(base), null);
+        }
+
+        try (ConfigurableApplicationContext context = start(url, INDEX_ENABLED)) {
+            UniqueBitmapService bitmapService = context.getBean(UniqueBitmapService.class);
+            assertFalse(bitmapService.covers(base));
+
+            runBackfill(context);
+            assertEquals(UniqueBitmapService.FULLY_INDEXED, bitmapService.getValidFrom());
+            for (LocalDateTime[] range : ranges(base)) {
+                assertTrue(bitmapService.covers(range[0], range[1], null));
+            }
+            assertBitmapsMatchRawHits(context, ranges(base));
+        }
+    }
+
+    @Test
+    void backfillStopsAtCompactionWatermark() {
+        LocalDateTime base = RollupGranularity.DAY.floor(LocalDateTime.now()).minusDays(10);
+        String url = EmbeddedDatabases.create("watermark");
+        Map<String, List<String>> expected;
+        try (ConfigurableApplicationContext context = start(url, INDEX_DISABLED)) {
+            context.getBean(StatsService.class).saveRecords(hits(base), null);
+            expected = exactStats(context, ranges(base));
+        }
+
+        try (ConfigurableApplicationContext context = start(url, INDEX_ENABLED)) {
+            context.getBean(CompactionService.class).compact();
+            LocalDateTime watermark = context.getBean(CompactionWatermark.class).get();
+            assertTrue(watermark.isAfter(base.plusDays(4)));
+
+            runBackfill(context);
+            assertEquals(watermark, context.getBean(UniqueBitmapService.class).getValidFrom());
+
+            StatsService statsService = context.getBean(StatsService.class);
+            for (LocalDateTime[] range : ranges(base)) {
+                String key = key(range);
+                if (range[0].isBefore(watermark)) {
+                    assertThrows(NoValidParameterRequest.class,
+                            () -> statsService.getAllStats(range[0], range[1], null, true, false), key);
+                } else {
+                    assertEquals(expected.get(key), exactStats(context, List.<LocalDateTime[]>of(range)).get(key), key);
+                }
+            }
+        }
+    }
+
+    @Test
+    void compactedDaysAreAnsweredFromBitmaps() {
+        LocalDateTime base = RollupGranularity.DAY.floor(LocalDateTime.now()).minusDays(10);
+        try (ConfigurableApplicationContext context = start(EmbeddedDatabases.create("compaction"), INDEX_ENABLED)) {
+            context.getBean(StatsService.class).saveRecords(hits(base), null);
+            runBackfill(context);
+            assertEquals(UniqueBitmapService.FULLY_INDEXED, context.getBean(UniqueBitmapService.class).getValidFrom());
+            Map<String, List<String>> expected = exactStats(context, ranges(base));
+
+            context.getBean(CompactionService.class).compact();
+            LocalDateTime watermark = context.getBean(CompactionWatermark.class).get();
+            assertNotEquals(0, count(context, "stats"));
+            assertEquals(0, context.getBean(JdbcTemplate.class).queryForObject(
+                    "select count(*) from stats where request_date_time < ?", Long.class, watermark));
+
+            StatsService statsService = context.getBean(StatsService.class);
+            for (LocalDateTime[] range : ranges(base)) {
+                String key = key(range);
+                if (hasPartialDayBefore(range, watermark)) {
+                    assertThrows(NoValidParameterRequest.class,
+                            () -> statsService.getAllStats(range[0], range[1], null, true, false), key);
+                } else {
+                    assertEquals(expected.get(key), exactStats(context, List.<LocalDateTime[]>of(range)).get(key), key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the range has a partial day read from raw hits before the watermark.
+     */
+    private static boolean hasPartialDayBefore(LocalDateTime[] range, LocalDateTime watermark) {
+        LocalDateTime to = range[1].plus(1, ChronoUnit.MICROS);
+        LocalDateTime dayFrom = RollupGranularity.DAY.ceil(range[0]);
+        LocalDateTime dayTo = RollupGranularity.DAY.floor(to);
+        if (!dayFrom.isBefore(dayTo)) {
+            return range[0].isBefore(watermark);
+        }
+        return range[0].isBefore(dayFrom.isBefore(watermark) ? dayFrom : watermark)
+                || dayTo.isBefore(to.isBefore(watermark) ? to : watermark);
+    }
+
+    private static ConfigurableApplicationContext start(String url, String index) {
+        String[] properties = new String[MANUAL_JOBS.length + 1];
+        System.arraycopy(MANUAL_JOBS, 0, properties, 0, MANUAL_JOBS.length);
+        properties[MANUAL_JOBS.length] = index;
+        return TestServers.start(url, properties);
+    }
+
+    private static void runBackfill(ConfigurableApplicationContext context) {
+        UniqueBitmapService bitmapService = context.getBean(UniqueBitmapService.class);
+        UniqueBitmapBackfillService backfillService = context.getBean(UniqueBitmapBackfillService.class);
+        LocalDateTime validFrom;
+        int runs = 0;
+        do {
+            validFrom = bitmapService.getValidFrom();
+            backfillService.backfill();
+            assertTrue(++runs < 20, "backfill does not finish");
+        } while (!Objects.equals(validFrom, bitmapService.getValidFrom()));
+    }
+
+    private static void assertBitmapsMatchRawHits(ConfigurableApplicationContext context,
+                                                  List<LocalDateTime[]> ranges) {
+        UniqueBitmapService bitmapService = context.getBean(UniqueBitmapService.class);
+        StatsQueryRepository queryRepository = context.getBean(StatsQueryRepository.class);
+        UriFilter uriFilter = context.getBean(DictionaryService.class).findUriFilter(URIS);
+        for (LocalDateTime[] range : ranges) {
+            for (UriFilter filter : new UriFilter[]{null, uriFilter}) {
+                List<String> expected = countsToStrings(queryRepository.findUnique(range[0], range[1], filter,
+                        null, null));
+                assertFalse(expected.isEmpty(), key(range));
+                assertEquals(expected, countsToStrings(bitmapService.getStats(range[0], range[1], filter)),
+                        key(range));
+            }
+        }
+    }
+
+    private static Map<String, List<String>> exactStats(ConfigurableApplicationContext context,
+                                                        List<LocalDateTime[]> ranges) {
+        StatsService statsService = context.getBean(StatsService.class);
+        Map<String, List<String>> stats = new LinkedHashMap<>();
+        for (LocalDateTime[] range : ranges) {
+            stats.put(key(range), toStrings(statsService.getAllStats(range[0], range[1], null, true, false).stream()
+                    .map(dto -> dto.getApp() + " " + dto.getUri() + " " + dto.getHits())
+                    .collect(Collectors.toList())));
+        }
+        return stats;
+    }
+
+    private static List<String> countsToStrings(List<StatsCount> counts) {
+        return toStrings(counts.stream()
+                .map(count -> count.getAppId() + " " + count.getUriId() + " " + count.getHits())
+                .collect(Collectors.toList()));
+    }
+
+    private static List<String> toStrings(List<String> rows) {
+        return rows.stream().sorted().collect(Collectors.toList());
+    }
+
+    private static long count(ConfigurableApplicationContext context, String table) {
+        return context.getBean(JdbcTemplate.class).queryForObject("select count(*) from " + table, Long.class);
+    }
+
+    private static String key(LocalDateTime[] range) {
+        return range[0] + " - " + range[1];
+    }
+
+    /**
+     * Inclusive ranges of whole days, of days with partial edges, within one day and within one hour.
+     */
+    private static List<LocalDateTime[]> ranges(LocalDateTime base) {
+        List<LocalDateTime[]> ranges = new ArrayList<>();
+        ranges.add(range(base, base.plusDays(9)));
+        ranges.add(range(base.plusDays(1), base.plusDays(3)));
+        ranges.add(range(base.plusDays(1).plusHours(3), base.plusDays(3).plusHours(7)));
+        ranges.add(range(base.plusDays(2), base.plusDays(7).plusHours(3)));
+        ranges.add(range(base.plusDays(2).plusHours(5), base.plusDays(2).plusHours(20)));
+        ranges.add(range(base.plusDays(6).plusMinutes(90), base.plusDays(8)));
+        ranges.add(range(base.plusDays(7).plusHours(10), base.plusDays(7).plusHours(11)));
+        return ranges;
+    }
+
+    private static LocalDateTime[] range(LocalDateTime from, LocalDateTime to) {
+        return new LocalDateTime[]{from, to.minus(1, ChronoUnit.MICROS)};
+    }
+
+    /**
+     * Hits of several apps and uris over eight days, with every ip seen on several uris and days.
+     */
+    private static List<HitDto> hits(LocalDateTime base) {
+        List<HitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            hits.add(HitDto.builder()
+                    .app(i % 5 == 0 ? "other" : "ewm")
+                    .uri(i % 4 == 0 ? "/users/" + i % 7 : "/events/" + i % 11)
+                    .ip("10.0." + i % 3 + "." + i % 97)
+                    .timestamp(base.plusMinutes(i * 4L).plusSeconds(i % 60).format(FORMATTER))
+                    .build());
+        }
+        return hits;
+    }
+}